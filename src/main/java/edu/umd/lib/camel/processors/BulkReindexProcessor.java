@@ -0,0 +1,503 @@
+package edu.umd.lib.camel.processors;
+
+import edu.umd.lib.camel.utils.BlockingTaskExecutors;
+import edu.umd.lib.camel.utils.CrawlCheckpoint;
+import edu.umd.lib.camel.utils.FingerprintStore;
+import edu.umd.lib.ldpath.ProgramPredicates;
+import edu.umd.lib.ldpath.ProxiedLinkedDataProvider;
+import org.apache.camel.Exchange;
+import org.apache.camel.Message;
+import org.apache.camel.Processor;
+import org.apache.camel.ProducerTemplate;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Serializable;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Processor that reindexes a whole subtree of the repository in bulk.
+ * <p>
+ * Starting from the resource in the "CamelFcrepoUri" header (usually a
+ * container), each resource is converted to JSON by the
+ * {@link LdpathProcessor}, and the resources it contains (via ldp:contains)
+ * are then processed in the same way, with up to "concurrency" resources
+ * processed in parallel (see {@link BlockingTaskExecutors}: on Java 21 and
+ * later, each resource is processed on a virtual thread, including its
+ * describedBy HEAD request and linked data retrievals; on earlier versions,
+ * a fork-join pool of platform threads is used). The contained resources are read from the LD cache
+ * entry of their container, so each container is only retrieved once.
+ * <p>
+ * The JSON documents are sent to "endpointUri" in batches of up to
+ * "batchSize" documents, as a JSON array, with the number of documents in
+ * the {@value #BATCH_SIZE_HEADER} header. Documents the LdpathProcessor
+ * marks as unchanged (when its "skipUnchanged" property is set) are not
+ * sent, and the fingerprints of the documents in a batch are committed to
+ * its fingerprint store once the batch has been sent. Documents the
+ * LdpathProcessor marks as partial (because its deadline was exceeded) are
+ * not sent either, so the index keeps the previous, complete version, and
+ * the resources they contain are still crawled.
+ * <p>
+ * If a "checkpointFile" is set, the URI of each resource whose whole
+ * subtree has been processed and sent completely (with no failed or partial
+ * documents) is recorded in it, and those subtrees are skipped when the
+ * crawl is run again after an interruption. The file is deleted once a crawl
+ * completes without failed or partial documents.
+ * <p>
+ * When the crawl is done, the {@value #PROCESSED_HEADER},
+ * {@value #FAILED_HEADER}, {@value #PARTIAL_HEADER} and
+ * {@value #SKIPPED_HEADER} headers of the incoming message are set to the
+ * number of resources processed, failed, only partially processed (and not
+ * sent), and skipped (from the checkpoint).
+ */
+public class BulkReindexProcessor implements Processor, Serializable {
+  private static final long serialVersionUID = 1L;
+
+  private final Logger logger = LoggerFactory.getLogger(BulkReindexProcessor.class);
+
+  private static final String LDP_CONTAINS = "http://www.w3.org/ns/ldp#contains";
+
+  // seconds to wait for running tasks to stop when a crawl ends
+  private static final long TERMINATION_TIMEOUT = 60;
+
+  public static final String BATCH_SIZE_HEADER = "CamelLdpathBatchSize";
+
+  public static final String PROCESSED_HEADER = "CamelLdpathBulkProcessed";
+
+  public static final String FAILED_HEADER = "CamelLdpathBulkFailed";
+
+  public static final String PARTIAL_HEADER = "CamelLdpathBulkPartial";
+
+  public static final String SKIPPED_HEADER = "CamelLdpathBulkSkipped";
+
+  private LdpathProcessor ldpathProcessor;
+
+  private String endpointUri;
+
+  private int batchSize = 100;
+
+  private int concurrency = 4;
+
+  private File checkpointFile;
+
+  @Override
+  public void process(final Exchange exchange) throws Exception {
+    checkConfiguration();
+    final Message in = exchange.getIn();
+    final String rootUri = in.getHeader("CamelFcrepoUri", String.class);
+    logger.info("Starting bulk reindex of {} with up to {} concurrent resources ({} threads)", rootUri,
+        concurrency, BlockingTaskExecutors.usesVirtualThreads() ? "virtual" : "platform");
+
+    final CrawlCheckpoint checkpoint = checkpointFile == null ? null : new CrawlCheckpoint(checkpointFile);
+    final ProducerTemplate producer = exchange.getContext().createProducerTemplate();
+    final ExecutorService executor = BlockingTaskExecutors.newExecutor("ldpath-reindex", concurrency);
+    final Crawl crawl = new Crawl(exchange, executor, producer, checkpoint);
+    try {
+      crawl.run();
+      if (checkpoint != null && crawl.failed.sum() == 0 && crawl.partial.sum() == 0) {
+        checkpoint.delete();
+      }
+    } finally {
+      // tasks still running after an abort must not send or checkpoint once
+      // the producer is stopped and the checkpoint closed
+      executor.shutdownNow();
+      awaitTermination(executor, rootUri);
+      producer.stop();
+      if (checkpoint != null) {
+        checkpoint.close();
+      }
+    }
+
+    logger.info("Bulk reindex of {} complete: {} processed, {} failed, {} partial, {} skipped, {} batches sent",
+        rootUri, crawl.processed.sum(), crawl.failed.sum(), crawl.partial.sum(), crawl.skipped.sum(), crawl.batches);
+    in.setHeader(PROCESSED_HEADER, crawl.processed.sum());
+    in.setHeader(FAILED_HEADER, crawl.failed.sum());
+    in.setHeader(PARTIAL_HEADER, crawl.partial.sum());
+    in.setHeader(SKIPPED_HEADER, crawl.skipped.sum());
+  }
+
+  private void awaitTermination(final ExecutorService executor, final String rootUri) {
+    try {
+      if (!executor.awaitTermination(TERMINATION_TIMEOUT, TimeUnit.SECONDS)) {
+        logger.warn("Tasks of the bulk reindex of {} still running after {} seconds", rootUri, TERMINATION_TIMEOUT);
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  /**
+   * Checks that the processor is configured, and that the LdpathProcessor
+   * keeps the ldp:contains triples the crawl needs.
+   */
+  private void checkConfiguration() {
+    if (ldpathProcessor == null || endpointUri == null) {
+      throw new IllegalStateException("ldpathProcessor and endpointUri must be set");
+    }
+    final String preferOmit = ldpathProcessor.getPreferOmit();
+    if (preferOmit != null && preferOmit.contains("PreferContainment")) {
+      throw new IllegalStateException("The LdpathProcessor omits ldp:contains triples, so the subtree cannot be crawled");
+    }
+    if (ldpathProcessor.isFilterTriples() && ldpathProcessor.getSharedCacheName() == null) {
+      final Set<String> predicates = ProgramPredicates.fromProgram(ldpathProcessor.getQuery());
+      if (predicates != null && !predicates.contains(LDP_CONTAINS)) {
+        throw new IllegalStateException(
+            "The LdpathProcessor filters out ldp:contains triples, so the subtree cannot be crawled");
+      }
+    }
+  }
+
+  /**
+   * The state of a single crawl: counts, the batch being collected, and the
+   * completed subtrees waiting for the batch to be sent before they are
+   * recorded in the checkpoint.
+   * <p>
+   * Each resource is processed by its own task on the executor. A resource's
+   * subtree is complete when the resource and the subtrees of all the
+   * resources it contains are complete, which is tracked by counting the
+   * unfinished tasks of each subtree, rather than by waiting for them, so
+   * that no thread is held while its subtree is processed.
+   */
+  private class Crawl {
+    private final Exchange exchange;
+
+    private final String rootUri;
+
+    private final ExecutorService executor;
+
+    private final ProducerTemplate producer;
+
+    private final CrawlCheckpoint checkpoint;
+
+    private final LongAdder processed = new LongAdder();
+
+    private final LongAdder failed = new LongAdder();
+
+    private final LongAdder partial = new LongAdder();
+
+    private final LongAdder skipped = new LongAdder();
+
+    private final CountDownLatch done = new CountDownLatch(1);
+
+    private final AtomicReference<RuntimeException> error = new AtomicReference<>();
+
+    // a lock rather than synchronized, so that virtual threads waiting for a
+    // batch to be sent do not pin their carrier threads
+    private final ReentrantLock batchLock = new ReentrantLock();
+
+    private final List<String> batch = new ArrayList<>();
+
+    // fingerprints of the documents in the batch, committed once it is sent
+    private final Map<String, String> batchFingerprints = new HashMap<>();
+
+    private final List<String> completedSubtrees = new ArrayList<>();
+
+    private long batches = 0;
+
+    Crawl(final Exchange exchange, final ExecutorService executor, final ProducerTemplate producer,
+          final CrawlCheckpoint checkpoint) {
+      this.exchange = exchange;
+      this.rootUri = exchange.getIn().getHeader("CamelFcrepoUri", String.class);
+      this.executor = executor;
+      this.producer = producer;
+      this.checkpoint = checkpoint;
+    }
+
+    /**
+     * Crawls the subtree of the root resource, and sends the last batch.
+     *
+     * @throws InterruptedException if interrupted while waiting for the crawl
+     */
+    void run() throws InterruptedException {
+      submit(new Node(rootUri, null));
+      done.await();
+      final RuntimeException e = error.get();
+      if (e != null) {
+        throw e;
+      }
+      flush();
+    }
+
+    private void submit(final Node node) {
+      try {
+        executor.execute(() -> crawl(node));
+      } catch (RejectedExecutionException e) {
+        // the crawl has been stopped
+        abort(e);
+      }
+    }
+
+    /**
+     * Processes a resource, and submits the resources it contains.
+     */
+    private void crawl(final Node node) {
+      if (error.get() != null) {
+        return;
+      }
+      try {
+        if (checkpoint != null && checkpoint.contains(node.uri)) {
+          logger.debug("Skipping {}, already completed", node.uri);
+          skipped.increment();
+        } else if (index(node)) {
+          final Set<String> children = ldpathProcessor.getContainedResources(node.uri);
+          if (!children.isEmpty()) {
+            logger.debug("Crawling {} resources contained in {}", children.size(), node.uri);
+            node.pending.addAndGet(children.size());
+            for (final String child : children) {
+              submit(new Node(child, node));
+            }
+          }
+        } else {
+          node.failed = true;
+        }
+        finish(node);
+      } catch (RuntimeException e) {
+        abort(e);
+      }
+    }
+
+    /**
+     * Records that a task of the given node's subtree is finished, and, for
+     * each subtree that this completes, records the completed subtree.
+     */
+    private void finish(final Node node) {
+      for (Node n = node; n != null && n.pending.decrementAndGet() == 0; n = n.parent) {
+        if (n.failed) {
+          if (n.parent != null) {
+            n.parent.failed = true;
+          }
+        } else {
+          subtreeCompleted(n.uri);
+        }
+        if (n.parent == null) {
+          done.countDown();
+        }
+      }
+    }
+
+    private void abort(final RuntimeException e) {
+      if (error.compareAndSet(null, e)) {
+        logger.error("Stopping bulk reindex of {}: {}", rootUri, e.getMessage());
+        done.countDown();
+      }
+    }
+
+    /**
+     * Converts the resource to JSON, and adds it to the batch. A partial
+     * document is not added, and marks the node as failed, so that its
+     * subtree is not recorded in the checkpoint.
+     *
+     * @return true if the resource was processed, false if it failed
+     */
+    boolean index(final Node node) {
+      final String uri = node.uri;
+      final Exchange resourceExchange = exchange.copy();
+      final Message message = resourceExchange.getIn();
+      message.setHeader("CamelFcrepoUri", uri);
+      if (!uri.equals(rootUri) || message.getHeader("CamelHttpUri") == null) {
+        message.setHeader("CamelHttpUri", ProxiedLinkedDataProvider.getInternalUrl(uri));
+      }
+      message.setBody("");
+      try {
+        ldpathProcessor.process(resourceExchange);
+      } catch (RuntimeException e) {
+        logger.warn("Unable to process {}: {}", uri, e.getMessage());
+        failed.increment();
+        return false;
+      }
+      processed.increment();
+
+      if (Boolean.TRUE.equals(message.getHeader(LdpathProcessor.PARTIAL_HEADER, Boolean.class))) {
+        logger.warn("Not sending partial document for {}", uri);
+        partial.increment();
+        node.failed = true;
+        return true;
+      }
+
+      final String json = message.getBody(String.class);
+      final boolean unchanged = Boolean.TRUE.equals(resourceExchange.getProperty(Exchange.ROUTE_STOP, Boolean.class));
+      if (!unchanged && json != null && !json.isEmpty()) {
+        add(uri, json, message.getHeader(LdpathProcessor.FINGERPRINT_HEADER, String.class));
+      }
+      return true;
+    }
+
+    void add(final String uri, final String json, final String fingerprint) {
+      batchLock.lock();
+      try {
+        if (error.get() != null) {
+          // the crawl has been stopped
+          return;
+        }
+        batch.add(json);
+        if (fingerprint != null) {
+          batchFingerprints.put(uri, fingerprint);
+        }
+        if (batch.size() >= batchSize) {
+          send();
+        }
+      } finally {
+        batchLock.unlock();
+      }
+    }
+
+    /**
+     * Records that the subtree of the given resource is complete. Every
+     * document in the subtree has already been added to a batch, so it can
+     * be recorded in the checkpoint once the current batch is sent.
+     */
+    void subtreeCompleted(final String uri) {
+      if (checkpoint == null) {
+        return;
+      }
+      batchLock.lock();
+      try {
+        completedSubtrees.add(uri);
+      } finally {
+        batchLock.unlock();
+      }
+    }
+
+    void flush() {
+      batchLock.lock();
+      try {
+        if (!batch.isEmpty() || !completedSubtrees.isEmpty()) {
+          send();
+        }
+      } finally {
+        batchLock.unlock();
+      }
+    }
+
+    private void send() {
+      if (!batch.isEmpty()) {
+        logger.debug("Sending batch of {} documents to {}", batch.size(), endpointUri);
+        producer.sendBodyAndHeader(endpointUri, "[" + String.join(",", batch) + "]", BATCH_SIZE_HEADER, batch.size());
+        batch.clear();
+        final FingerprintStore fingerprintStore = ldpathProcessor.getFingerprintStore();
+        if (fingerprintStore != null) {
+          batchFingerprints.forEach(fingerprintStore::commit);
+        }
+        batchFingerprints.clear();
+        batches++;
+      }
+      if (checkpoint != null) {
+        try {
+          checkpoint.addAll(completedSubtrees);
+        } catch (IOException e) {
+          throw new UncheckedIOException("Unable to write checkpoint " + checkpoint.getFile(), e);
+        }
+        completedSubtrees.clear();
+      }
+    }
+  }
+
+  /**
+   * A resource in the crawl, with the number of unfinished tasks in its
+   * subtree (initially one, for processing the resource itself).
+   */
+  private static class Node {
+    private final String uri;
+
+    private final Node parent;
+
+    private final AtomicInteger pending = new AtomicInteger(1);
+
+    private volatile boolean failed = false;
+
+    Node(final String uri, final Node parent) {
+      this.uri = uri;
+      this.parent = parent;
+    }
+  }
+
+  public LdpathProcessor getLdpathProcessor() {
+    return ldpathProcessor;
+  }
+
+  /**
+   * Sets the processor used to convert each resource to JSON.
+   *
+   * @param ldpathProcessor the LDPath processor
+   */
+  public void setLdpathProcessor(LdpathProcessor ldpathProcessor) {
+    this.ldpathProcessor = ldpathProcessor;
+  }
+
+  public String getEndpointUri() {
+    return endpointUri;
+  }
+
+  /**
+   * Sets the Camel endpoint the batches of JSON documents are sent to.
+   *
+   * @param endpointUri the endpoint URI
+   */
+  public void setEndpointUri(String endpointUri) {
+    this.endpointUri = endpointUri;
+  }
+
+  public int getBatchSize() {
+    return batchSize;
+  }
+
+  /**
+   * Sets the maximum number of JSON documents in each batch.
+   *
+   * @param batchSize the batch size
+   */
+  public void setBatchSize(int batchSize) {
+    if (batchSize < 1) {
+      throw new IllegalArgumentException("batchSize must be at least 1");
+    }
+    this.batchSize = batchSize;
+  }
+
+  public int getConcurrency() {
+    return concurrency;
+  }
+
+  /**
+   * Sets the number of resources processed in parallel. Requests to each
+   * host are also subject to the LdpathProcessor's concurrency limiter, if
+   * it has one.
+   *
+   * @param concurrency the number of crawler threads
+   */
+  public void setConcurrency(int concurrency) {
+    if (concurrency < 1) {
+      throw new IllegalArgumentException("concurrency must be at least 1");
+    }
+    this.concurrency = concurrency;
+  }
+
+  public File getCheckpointFile() {
+    return checkpointFile;
+  }
+
+  /**
+   * Sets the file used to record completed subtrees, so that an interrupted
+   * crawl can be resumed. When null (the default), a crawl always starts
+   * from the beginning.
+   *
+   * @param checkpointFile the checkpoint file
+   */
+  public void setCheckpointFile(File checkpointFile) {
+    this.checkpointFile = checkpointFile;
+  }
+}
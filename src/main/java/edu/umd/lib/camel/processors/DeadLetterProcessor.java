@@ -1,20 +1,277 @@
 package edu.umd.lib.camel.processors;
 
+import com.fasterxml.jackson.core.JsonProcessingException;
+import edu.umd.lib.ldpath.DeadlineExceededException;
+import edu.umd.lib.ldpath.NegativeCache;
 import org.apache.camel.Exchange;
 import org.apache.camel.Message;
+import org.apache.camel.MessageHistory;
 import org.apache.camel.Processor;
+import org.apache.marmotta.ldclient.exception.DataRetrievalException;
+import org.apache.marmotta.ldpath.exception.LDPathParseException;
 
+import java.io.InterruptedIOException;
 import java.io.Serializable;
+import java.lang.reflect.Method;
+import java.net.ConnectException;
+import java.net.NoRouteToHostException;
+import java.net.UnknownHostException;
+import java.util.Date;
+import java.util.List;
+import java.util.StringJoiner;
 
+/**
+ * Processor that records why an exchange failed in message headers.
+ * <p>
+ * In addition to the last endpoint URI and the exception message, the
+ * failure is classified as retryable (timeouts, connection failures, 5xx
+ * responses) or permanent (LDPath parse errors, JSON errors, invalid
+ * configuration, 4xx responses other than 408 and 429), so that routes can
+ * skip redelivery of exchanges that cannot succeed, for example with
+ * {@code retryWhile(method(deadLetterProcessor, "isRetryable"))}. For
+ * retryable failures, a suggested redelivery delay is recorded, which grows
+ * with the number of redeliveries already attempted.
+ * <p>
+ * The time since the exchange was created, and the time spent in each node
+ * of the message history (if enabled), are also recorded.
+ */
 public class DeadLetterProcessor implements Processor, Serializable {
+    public static final String LAST_ENDPOINT_URI_HEADER = "CamelLastEndpointUri";
+
+    public static final String EXCEPTION_MESSAGE_HEADER = "CamelExceptionMessage";
+
+    public static final String EXCEPTION_TYPE_HEADER = "CamelExceptionType";
+
+    public static final String FAILURE_TYPE_HEADER = "CamelFailureType";
+
+    public static final String RETRYABLE_HEADER = "CamelFailureRetryable";
+
+    public static final String HTTP_STATUS_HEADER = "CamelFailureHttpStatus";
+
+    public static final String SUGGESTED_DELAY_HEADER = "CamelFailureSuggestedDelay";
+
+    public static final String ELAPSED_HEADER = "CamelFailureElapsed";
+
+    public static final String STAGE_TIMES_HEADER = "CamelFailureStageTimes";
+
+    /**
+     * The kinds of failure, and whether each is worth retrying
+     */
+    public enum FailureType {
+        LDPATH_PARSE(false),
+        JSON(false),
+        INVALID(false),
+        HTTP_CLIENT_ERROR(false),
+        HTTP_SERVER_ERROR(true),
+        TIMEOUT(true),
+        CONNECTION(true),
+        UNKNOWN(true);
+
+        private final boolean retryable;
+
+        FailureType(final boolean retryable) {
+            this.retryable = retryable;
+        }
+
+        public boolean isRetryable() {
+            return retryable;
+        }
+    }
+
+    private long baseDelay = 1000;
+
+    private long maxDelay = 300000;
+
     @Override
     public void process(final Exchange exchange) {
         final Message in = exchange.getIn();
         // record the last endpoint that Camel delivered to
         final String lastEndpointUri = exchange.getProperty(Exchange.TO_ENDPOINT, String.class);
-        in.setHeader("CamelLastEndpointUri", lastEndpointUri);
+        in.setHeader(LAST_ENDPOINT_URI_HEADER, lastEndpointUri);
+
+        recordTimes(exchange);
+
+        final Throwable cause = getCause(exchange);
+        if (cause == null) {
+            return;
+        }
         // record the exception message
-        final Exception cause = exchange.getProperty(Exchange.EXCEPTION_CAUGHT, Exception.class);
-        in.setHeader("CamelExceptionMessage", cause.getMessage());
+        in.setHeader(EXCEPTION_MESSAGE_HEADER, cause.getMessage());
+        in.setHeader(EXCEPTION_TYPE_HEADER, getRootCause(cause).getClass().getName());
+
+        final int status = getHttpStatus(cause);
+        if (status > 0) {
+            in.setHeader(HTTP_STATUS_HEADER, status);
+        }
+        final FailureType type = classify(cause, status);
+        in.setHeader(FAILURE_TYPE_HEADER, type.name());
+        in.setHeader(RETRYABLE_HEADER, type.isRetryable());
+        if (type.isRetryable()) {
+            final int redeliveries = in.getHeader(Exchange.REDELIVERY_COUNTER, 0, Integer.class);
+            in.setHeader(SUGGESTED_DELAY_HEADER, getSuggestedDelay(type, redeliveries));
+        }
+    }
+
+    /**
+     * Returns true if the exchange's failure is worth retrying. Exchanges
+     * without an exception are not retried.
+     *
+     * @param exchange the failed exchange
+     * @return true if the failure is retryable
+     */
+    public boolean isRetryable(final Exchange exchange) {
+        final Throwable cause = getCause(exchange);
+        return cause != null && classify(cause, getHttpStatus(cause)).isRetryable();
+    }
+
+    private static Throwable getCause(final Exchange exchange) {
+        final Exception caught = exchange.getProperty(Exchange.EXCEPTION_CAUGHT, Exception.class);
+        return caught != null ? caught : exchange.getException();
+    }
+
+    /**
+     * Classifies the failure, by the first exception in the cause chain of a
+     * known kind, or by the HTTP status.
+     *
+     * @param cause the exception
+     * @param status the HTTP status of the failure, or -1 if unknown
+     * @return the failure type
+     */
+    static FailureType classify(final Throwable cause, final int status) {
+        for (Throwable t = cause; t != null; t = t.getCause()) {
+            if (t instanceof LDPathParseException) {
+                return FailureType.LDPATH_PARSE;
+            }
+            if (t instanceof JsonProcessingException) {
+                return FailureType.JSON;
+            }
+            if (t instanceof DeadlineExceededException || t instanceof InterruptedIOException) {
+                return FailureType.TIMEOUT;
+            }
+            if (t instanceof ConnectException || t instanceof NoRouteToHostException
+                || t instanceof UnknownHostException) {
+                return FailureType.CONNECTION;
+            }
+            if (t instanceof IllegalArgumentException || t instanceof IllegalStateException) {
+                return FailureType.INVALID;
+            }
+            if (t instanceof DataRetrievalException && status <= 0) {
+                // the linked data client only reports the status in the message
+                switch (NegativeCache.classify((DataRetrievalException) t, 0)) {
+                    case NOT_FOUND:
+                    case CLIENT_ERROR:
+                        return FailureType.HTTP_CLIENT_ERROR;
+                    case SERVER_ERROR:
+                        return FailureType.HTTP_SERVER_ERROR;
+                    case TIMEOUT:
+                        return FailureType.TIMEOUT;
+                    case CONNECTION_ERROR:
+                        return FailureType.CONNECTION;
+                    default:
+                        break;
+                }
+            }
+        }
+        if (status == 408) {
+            return FailureType.TIMEOUT;
+        }
+        // 429 Too Many Requests is an overloaded server, not a bad request
+        if (status == 429 || status >= 500) {
+            return FailureType.HTTP_SERVER_ERROR;
+        }
+        if (status >= 400) {
+            return FailureType.HTTP_CLIENT_ERROR;
+        }
+        return FailureType.UNKNOWN;
+    }
+
+    /**
+     * Returns the HTTP status of the first exception in the cause chain that
+     * has a "getStatusCode" method (such as the Camel HTTP and fcrepo
+     * operation failed exceptions), or -1 if there is none.
+     *
+     * @param cause the exception
+     * @return the HTTP status, or -1
+     */
+    static int getHttpStatus(final Throwable cause) {
+        for (Throwable t = cause; t != null; t = t.getCause()) {
+            try {
+                final Method method = t.getClass().getMethod("getStatusCode");
+                final Object status = method.invoke(t);
+                if (status instanceof Integer) {
+                    return (Integer) status;
+                }
+            } catch (ReflectiveOperationException | SecurityException e) {
+                // no status on this exception
+            }
+        }
+        return -1;
+    }
+
+    private static Throwable getRootCause(final Throwable cause) {
+        Throwable root = cause;
+        while (root.getCause() != null && root.getCause() != root) {
+            root = root.getCause();
+        }
+        return root;
+    }
+
+    /**
+     * Returns the suggested delay before the next redelivery: the base delay
+     * (five times the base delay for timeouts and server errors, to give an
+     * overloaded server time to recover), doubled for each redelivery already
+     * attempted, up to the maximum delay.
+     */
+    long getSuggestedDelay(final FailureType type, final int redeliveries) {
+        final long initial = type == FailureType.TIMEOUT || type == FailureType.HTTP_SERVER_ERROR
+            ? baseDelay * 5 : baseDelay;
+        final int doublings = Math.min(Math.max(redeliveries, 0), 30);
+        return Math.min(maxDelay, initial << doublings);
+    }
+
+    private void recordTimes(final Exchange exchange) {
+        final Message in = exchange.getIn();
+        final Date created = exchange.getProperty(Exchange.CREATED_TIMESTAMP, Date.class);
+        if (created != null) {
+            in.setHeader(ELAPSED_HEADER, System.currentTimeMillis() - created.getTime());
+        }
+        final List<?> history = exchange.getProperty(Exchange.MESSAGE_HISTORY, List.class);
+        if (history != null && !history.isEmpty()) {
+            final StringJoiner stageTimes = new StringJoiner(",");
+            for (final Object entry : history) {
+                if (entry instanceof MessageHistory) {
+                    final MessageHistory stage = (MessageHistory) entry;
+                    stageTimes.add(stage.getRouteId() + "/" + stage.getNode().getId() + "=" + stage.getElapsed());
+                }
+            }
+            in.setHeader(STAGE_TIMES_HEADER, stageTimes.toString());
+        }
+    }
+
+    public long getBaseDelay() {
+        return baseDelay;
+    }
+
+    /**
+     * Sets the suggested delay (in milliseconds) before the first redelivery
+     * of a retryable failure.
+     *
+     * @param baseDelay the base delay
+     */
+    public void setBaseDelay(long baseDelay) {
+        this.baseDelay = baseDelay;
+    }
+
+    public long getMaxDelay() {
+        return maxDelay;
+    }
+
+    /**
+     * Sets the longest suggested redelivery delay (in milliseconds).
+     *
+     * @param maxDelay the maximum delay
+     */
+    public void setMaxDelay(long maxDelay) {
+        this.maxDelay = maxDelay;
     }
 }
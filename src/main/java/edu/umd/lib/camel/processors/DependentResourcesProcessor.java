@@ -0,0 +1,109 @@
+package edu.umd.lib.camel.processors;
+
+import edu.umd.lib.camel.utils.DependencyIndex;
+import org.apache.camel.Exchange;
+import org.apache.camel.Message;
+import org.apache.camel.Processor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Serializable;
+import java.util.List;
+
+/**
+ * Processor that finds the resources to process again when a resource they
+ * link to has changed, so that only those resources are reindexed, instead
+ * of the whole repository.
+ * <p>
+ * The URIs of the resources whose output was last generated from the
+ * resource in the "CamelFcrepoUri" header are looked up in the
+ * {@link DependencyIndex} (as recorded by the {@link LdpathProcessor}), and
+ * set as the body of the message, as a list of strings, with their number
+ * in the {@value #DEPENDENT_COUNT_HEADER} header. Routes will usually split
+ * the list, and send each URI (as the "CamelFcrepoUri" header) to the route
+ * that runs the LdpathProcessor.
+ * <p>
+ * If an LdpathProcessor is set, the changed resource is first removed from
+ * its LD cache, so that the dependent resources are processed with the
+ * changed resource's current triples.
+ * <p>
+ * When "removeChanged" is true (for example, in a route handling resource
+ * deletions), the dependencies recorded for the changed resource itself are
+ * also removed from the index.
+ */
+public class DependentResourcesProcessor implements Processor, Serializable {
+  private static final long serialVersionUID = 1L;
+
+  private final Logger logger = LoggerFactory.getLogger(DependentResourcesProcessor.class);
+
+  /**
+   * Message header set to the number of dependent resources found
+   */
+  public static final String DEPENDENT_COUNT_HEADER = "CamelLdpathDependentCount";
+
+  private DependencyIndex dependencyIndex;
+
+  private LdpathProcessor ldpathProcessor;
+
+  private boolean removeChanged = false;
+
+  @Override
+  public void process(final Exchange exchange) {
+    if (dependencyIndex == null) {
+      throw new IllegalStateException("dependencyIndex must be set");
+    }
+    final Message in = exchange.getIn();
+    final String changedUri = in.getHeader("CamelFcrepoUri", String.class);
+    if (changedUri == null) {
+      throw new IllegalArgumentException("CamelFcrepoUri header is required to find dependent resources");
+    }
+
+    if (ldpathProcessor != null) {
+      ldpathProcessor.evict(changedUri);
+    }
+    if (removeChanged) {
+      dependencyIndex.remove(changedUri);
+    }
+
+    final List<String> dependents = dependencyIndex.getDependents(changedUri);
+    logger.debug("Found {} resources depending on {}", dependents.size(), changedUri);
+    in.setBody(dependents);
+    in.setHeader(DEPENDENT_COUNT_HEADER, dependents.size());
+  }
+
+  public DependencyIndex getDependencyIndex() {
+    return dependencyIndex;
+  }
+
+  public void setDependencyIndex(DependencyIndex dependencyIndex) {
+    this.dependencyIndex = dependencyIndex;
+  }
+
+  public LdpathProcessor getLdpathProcessor() {
+    return ldpathProcessor;
+  }
+
+  /**
+   * Sets the LdpathProcessor to remove the changed resource from the LD
+   * cache of. When null (the default), the LD cache is not changed.
+   *
+   * @param ldpathProcessor the LdpathProcessor
+   */
+  public void setLdpathProcessor(LdpathProcessor ldpathProcessor) {
+    this.ldpathProcessor = ldpathProcessor;
+  }
+
+  public boolean isRemoveChanged() {
+    return removeChanged;
+  }
+
+  /**
+   * Sets whether to remove the dependencies recorded for the changed
+   * resource itself, as when it has been deleted.
+   *
+   * @param removeChanged true to remove the changed resource's dependencies
+   */
+  public void setRemoveChanged(boolean removeChanged) {
+    this.removeChanged = removeChanged;
+  }
+}
@@ -0,0 +1,64 @@
+package edu.umd.lib.camel.processors;
+
+import edu.umd.lib.camel.utils.FingerprintStore;
+import org.apache.camel.Exchange;
+import org.apache.camel.Message;
+import org.apache.camel.Processor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Serializable;
+
+import static edu.umd.lib.camel.processors.LdpathProcessor.FINGERPRINT_HEADER;
+
+/**
+ * Processor that records the fingerprint of the JSON generated by an
+ * {@link LdpathProcessor} in the {@link FingerprintStore}, once the JSON has
+ * been delivered.
+ * <p>
+ * Place this after the step that sends the JSON downstream (for example, to
+ * Solr), so that if delivery fails, the fingerprint is not recorded and the
+ * JSON is not treated as unchanged when the exchange is redelivered. It
+ * reads the resource URI from the "CamelFcrepoUri" header and the
+ * fingerprint from the {@value LdpathProcessor#FINGERPRINT_HEADER} header;
+ * exchanges without a fingerprint (such as partial results) are left alone.
+ */
+public class FingerprintCommitProcessor implements Processor, Serializable {
+  private static final long serialVersionUID = 1L;
+
+  private final Logger logger = LoggerFactory.getLogger(FingerprintCommitProcessor.class);
+
+  private FingerprintStore fingerprintStore;
+
+  @Override
+  public void process(final Exchange exchange) {
+    if (fingerprintStore == null) {
+      throw new IllegalStateException("fingerprintStore must be set");
+    }
+    final Message in = exchange.getIn();
+    final String fingerprint = in.getHeader(FINGERPRINT_HEADER, String.class);
+    if (fingerprint == null) {
+      return;
+    }
+    final String resourceUri = in.getHeader("CamelFcrepoUri", String.class);
+    if (resourceUri == null) {
+      throw new IllegalArgumentException("CamelFcrepoUri header is required to commit a fingerprint");
+    }
+    logger.debug("Committing fingerprint for {}", resourceUri);
+    fingerprintStore.commit(resourceUri, fingerprint);
+  }
+
+  public FingerprintStore getFingerprintStore() {
+    return fingerprintStore;
+  }
+
+  /**
+   * Sets the store to record fingerprints in. This should be the same store
+   * as the LdpathProcessor's.
+   *
+   * @param fingerprintStore the fingerprint store
+   */
+  public void setFingerprintStore(FingerprintStore fingerprintStore) {
+    this.fingerprintStore = fingerprintStore;
+  }
+}
@@ -2,16 +2,41 @@ package edu.umd.lib.camel.processors;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import edu.umd.lib.camel.utils.DependencyIndex;
+import edu.umd.lib.camel.utils.FingerprintStore;
 import edu.umd.lib.camel.utils.LinkHeaders;
 import edu.umd.lib.fcrepo.AuthTokenService;
+import edu.umd.lib.ldpath.Deadline;
+import edu.umd.lib.ldpath.DeadlineExceededException;
+import edu.umd.lib.ldpath.DeadlineRequestInterceptor;
+import edu.umd.lib.ldpath.DependencyRecorder;
+import edu.umd.lib.ldpath.FcrepoRequestInterceptor;
+import edu.umd.lib.ldpath.ForwardingCachingBackend;
+import edu.umd.lib.ldpath.HostConcurrencyLimiter;
+import edu.umd.lib.ldpath.HttpStatusRecorder;
+import edu.umd.lib.ldpath.InterningCachingBackend;
+import edu.umd.lib.ldpath.LdpathProfiler;
+import edu.umd.lib.ldpath.MemoInvalidatingCachingBackend;
+import edu.umd.lib.ldpath.MemoizingLDCacheBackend;
+import edu.umd.lib.ldpath.MemoizingSelector;
+import edu.umd.lib.ldpath.NegativeCache;
+import edu.umd.lib.ldpath.NegativeCachingBackend;
+import edu.umd.lib.ldpath.PathMemo;
+import edu.umd.lib.ldpath.ProfilingLDCacheBackend;
+import edu.umd.lib.ldpath.ProgramPredicates;
 import edu.umd.lib.ldpath.ProxiedLinkedDataProvider;
+import edu.umd.lib.ldpath.SharedCachingBackends;
+import edu.umd.lib.ldpath.SnapshotCachingBackend;
+import edu.umd.lib.ldpath.ValueInterner;
 import org.apache.camel.Exchange;
 import org.apache.camel.Message;
 import org.apache.camel.Processor;
 import org.apache.camel.RuntimeCamelException;
+import org.apache.camel.Service;
 import org.apache.http.Header;
 import org.apache.http.HttpResponse;
 import org.apache.http.client.HttpClient;
+import org.apache.http.client.config.RequestConfig;
 import org.apache.http.client.methods.HttpHead;
 import org.apache.http.impl.client.CloseableHttpClient;
 import org.apache.http.impl.client.HttpClientBuilder;
@@ -19,6 +44,7 @@ import org.apache.http.message.BasicHeader;
 import org.apache.marmotta.ldcache.api.LDCachingBackend;
 import org.apache.marmotta.ldcache.backend.infinispan.LDCachingInfinispanBackend;
 import org.apache.marmotta.ldcache.model.CacheConfiguration;
+import org.apache.marmotta.ldcache.model.CacheEntry;
 import org.apache.marmotta.ldcache.services.LDCache;
 import org.apache.marmotta.ldclient.api.endpoint.Endpoint;
 import org.apache.marmotta.ldclient.api.provider.DataProvider;
@@ -27,18 +53,27 @@ import org.apache.marmotta.ldclient.model.ClientConfiguration;
 import org.apache.marmotta.ldpath.LDPath;
 import org.apache.marmotta.ldpath.backend.linkeddata.LDCacheBackend;
 import org.apache.marmotta.ldpath.exception.LDPathParseException;
+import org.apache.marmotta.ldpath.model.fields.FieldMapping;
+import org.apache.marmotta.ldpath.model.programs.Program;
+import org.openrdf.model.Statement;
 import org.openrdf.model.Value;
 import org.openrdf.model.impl.URIImpl;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import javax.management.JMException;
+import java.io.File;
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.io.Serializable;
 import java.io.StringReader;
 import java.net.MalformedURLException;
 import java.net.URI;
 import java.net.URL;
 import java.util.*;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
 import static edu.umd.lib.camel.processors.AddBearerAuthorizationProcessor.USERNAME_HEADER_NAME;
 import static edu.umd.lib.fcrepo.LdapRoleLookupService.ADMIN_ROLE;
@@ -58,8 +93,15 @@ import static org.apache.marmotta.ldclient.api.endpoint.Endpoint.PRIORITY_HIGH;
  * Note: This processor is intended for use in a Docker Swarm or Kubernetes
  * stack, where the fcrepo web application is available on an "internal"
  * container-based URL, which is separate from the "external" URL.
+ * <p>
+ * Linked resources are read through an LD cache, which is created on first
+ * use and shut down when the processor is stopped. The optional features
+ * built around it (failure caching, snapshots, sharing between processors,
+ * per-host request limits, triple filtering, profiling, deadlines, path
+ * memoization, dependency tracking and change detection) are configured
+ * through the bean properties; see their setters.
  */
-public class LdpathProcessor implements Processor, Serializable {
+public class LdpathProcessor implements Processor, Service, Serializable {
   private static final long serialVersionUID = 1L;
 
   private final Logger logger = LoggerFactory.getLogger(LdpathProcessor.class);
@@ -69,40 +111,118 @@ public class LdpathProcessor implements Processor, Serializable {
    */
   private static final String NON_RDF_SOURCE_URI = "http://www.w3.org/ns/ldp#NonRDFSource";
 
+  private static final org.openrdf.model.URI LDP_CONTAINS = new URIImpl("http://www.w3.org/ns/ldp#contains");
+
+  /**
+   * Message header set to true when the generated JSON is unchanged from the
+   * last JSON generated for the resource
+   */
+  public static final String UNCHANGED_HEADER = "CamelLdpathUnchanged";
+
+  /**
+   * Message header set to the fingerprint of the generated JSON, to be
+   * committed to the fingerprint store once the JSON is delivered
+   */
+  public static final String FINGERPRINT_HEADER = "CamelLdpathFingerprint";
+
+  /**
+   * Message header set to true when the deadline passed before all the
+   * fields of the LDPath query were evaluated
+   */
+  public static final String PARTIAL_HEADER = "CamelLdpathPartial";
+
+  /**
+   * What to do when the deadline for an exchange passes
+   */
+  public enum DeadlinePolicy {
+    /**
+     * Fail the exchange
+     */
+    FAIL,
+    /**
+     * Return the fields evaluated before the deadline
+     */
+    PARTIAL
+  }
+
   /**
    * The LDPath query for transforming RDF to JSON
    */
   private String query;
 
-  private final LDCachingBackend cachingBackend;
+  private volatile NegativeCachingBackend cachingBackend;
 
   private final ObjectMapper objectMapper;
 
-  private final ClientConfiguration clientConfig;
-
   final ProxiedLinkedDataProvider provider;
 
-  public LdpathProcessor() {
-    clientConfig = new ClientConfiguration();
-    cachingBackend = new LDCachingInfinispanBackend();
-    cachingBackend.initialize();
+  private NegativeCache negativeCache;
 
-    Endpoint endpoint = new LinkedDataEndpoint();
-    endpoint.setType(ProxiedLinkedDataProvider.PROVIDER_NAME);
-    endpoint.setPriority(PRIORITY_HIGH);
-    clientConfig.addEndpoint(endpoint);
+  private FingerprintStore fingerprintStore;
 
-    provider = new ProxiedLinkedDataProvider();
+  private long fingerprintSaveInterval = 0;
 
-    Set<DataProvider> providers = new HashSet<>();
-    providers.add(provider);
-    clientConfig.setProviders(providers);
+  private ScheduledExecutorService fingerprintSaveScheduler;
+
+  private DependencyIndex dependencyIndex;
+
+  private boolean skipUnchanged = false;
+
+  private HostConcurrencyLimiter concurrencyLimiter;
+
+  private String preferInclude;
+
+  private String preferOmit;
+
+  private String acceptHeader;
+
+  private boolean filterTriples = false;
+
+  private String sharedCacheName;
+
+  private LdpathProfiler profiler;
+
+  private long deadline = 0;
+
+  private DeadlinePolicy deadlinePolicy = DeadlinePolicy.FAIL;
+
+  private boolean memoizePaths = false;
+
+  private int pathMemoMaxEntries = 10000;
+
+  private long pathMemoTtl = TimeUnit.MINUTES.toSeconds(5);
+
+  private boolean internTerms = false;
+
+  private int internerMaxSize = 100000;
+
+  private File cacheSnapshotFile;
+
+  private long cacheSnapshotInterval = 0;
+
+  private long cacheSnapshotMaxAge = TimeUnit.DAYS.toSeconds(1);
+
+  public LdpathProcessor() {
+    negativeCache = new NegativeCache();
+
+    provider = new ProxiedLinkedDataProvider();
+    provider.setNegativeCache(negativeCache);
 
     objectMapper = new ObjectMapper();
   }
 
   @Override
   public void process(final Exchange exchange) {
+    final Deadline exchangeDeadline = deadline > 0 ? Deadline.after(deadline) : null;
+    Deadline.setCurrent(exchangeDeadline);
+    try {
+      processResource(exchange, exchangeDeadline);
+    } finally {
+      Deadline.setCurrent(null);
+    }
+  }
+
+  private void processResource(final Exchange exchange, final Deadline exchangeDeadline) {
     // Retrieve message headers
     final Message in = exchange.getIn();
     final String issuer = in.getHeader(USERNAME_HEADER_NAME, String.class);
@@ -110,8 +230,9 @@ public class LdpathProcessor implements Processor, Serializable {
     final String containerBasedUri = in.getHeader("CamelHttpUri", String.class);
 
     // Remove the resourceURI from the cache, as it is being updated (and any
-    // cache entry is now stale).
-    cachingBackend.removeEntry(new URIImpl(resourceURI));
+    // cache entry, or remembered failure, is now stale).
+    final LDCachingBackend ldCachingBackend = getCachingBackend();
+    ldCachingBackend.removeEntry(new URIImpl(resourceURI));
 
     final String authToken = getAuthToken(exchange, issuer);
 
@@ -135,8 +256,18 @@ public class LdpathProcessor implements Processor, Serializable {
     }
 
     // Configure HttpClient for making resource request
-    final HttpClient httpClient = HttpClientBuilder.create().setDefaultHeaders(headers).build();
-    clientConfig.setHttpClient(httpClient);
+    final HttpClientBuilder httpClientBuilder = HttpClientBuilder.create()
+        .setDefaultHeaders(headers)
+        .addInterceptorLast(new HttpStatusRecorder());
+    if (exchangeDeadline != null) {
+      httpClientBuilder.addInterceptorLast(new DeadlineRequestInterceptor());
+    }
+    final String preferHeader = FcrepoRequestInterceptor.buildPreferHeader(preferInclude, preferOmit);
+    if (preferHeader != null || acceptHeader != null) {
+      httpClientBuilder.addInterceptorLast(
+          new FcrepoRequestInterceptor(getRepositoryHosts(containerBasedUri), preferHeader, acceptHeader));
+    }
+    final HttpClient httpClient = httpClientBuilder.build();
 
     // Get the URL for Linked Data
     String linkedDataResourceUrl = getLinkedDataResourceUrl(authToken, containerBasedUri);
@@ -145,28 +276,45 @@ public class LdpathProcessor implements Processor, Serializable {
     provider.setLinkedDataMapping(resourceURI, linkedDataResourceUrl);
 
     // Set up LDPath
-    final CacheConfiguration cacheConfig = new CacheConfiguration(clientConfig);
-    final LDCacheBackend cacheBackend = new LDCacheBackend(new LDCache(cacheConfig, cachingBackend));
+    final CacheConfiguration cacheConfig = new CacheConfiguration(createClientConfiguration(httpClient));
+    final LDCache ldCache = new LDCache(cacheConfig, ldCachingBackend);
+    final PathMemo pathMemo = getPathMemo(ldCachingBackend);
+    final MemoizingLDCacheBackend cacheBackend = profiler == null
+        ? new MemoizingLDCacheBackend(ldCache, ldCachingBackend, pathMemo)
+        : new ProfilingLDCacheBackend(ldCache, ldCachingBackend, pathMemo);
     final LDPath<Value> ldpath = new LDPath<>(cacheBackend);
 
     logger.debug("Sending request to {} for {}", containerBasedUri, resourceURI);
     logger.debug("LDPath query: {}", query);
     String jsonResult;
+    if (dependencyIndex != null) {
+      DependencyRecorder.start();
+    }
     try {
-      jsonResult = execute(ldpath, resourceURI);
+      jsonResult = execute(ldpath, cacheBackend, resourceURI, exchangeDeadline);
+      // a partial evaluation may not have read every dependency, so the
+      // dependencies recorded from the last complete one are kept
+      final boolean complete = exchangeDeadline == null || !exchangeDeadline.isExceeded();
+      if (dependencyIndex != null && complete) {
+        dependencyIndex.record(resourceURI, DependencyRecorder.stop());
+      }
     } catch (LDPathParseException e) {
       logger.error("LDPath parse error: {}", e.getMessage());
       throw new RuntimeCamelException("LDPath parse error", e);
     } catch (JsonProcessingException e) {
       logger.error("JSON processing error: {}", e.getMessage());
       throw new RuntimeCamelException("JSON processing error", e);
+    } catch (DeadlineExceededException e) {
+      logger.warn("Processing of {} did not complete in time: {}", resourceURI, e.getMessage());
+      throw e;
+    } finally {
+      DependencyRecorder.stop();
+      logger.debug("Removing {} from linkedDataMapKey", resourceURI);
+      provider.removeLinkedDataMapping(resourceURI);
     }
     assert jsonResult != null;
     assert !jsonResult.isEmpty();
 
-    logger.debug("Removing {} from linkedDataMapKey", resourceURI);
-    provider.removeLinkedDataMapping(resourceURI);
-
     // Force the Exchange to use UTF-8, otherwise Japanese characters are not
     // passed properly to Solr.
     exchange.setProperty(Exchange.CHARSET_NAME, "UTF-8");
@@ -174,6 +322,196 @@ public class LdpathProcessor implements Processor, Serializable {
     // Add the JSON result to the message
     in.setBody(jsonResult, String.class);
     in.setHeader("Content-Type", "application/json");
+
+    final boolean partial = exchangeDeadline != null && exchangeDeadline.isExceeded();
+    if (exchangeDeadline != null) {
+      in.setHeader(PARTIAL_HEADER, partial);
+    }
+
+    if (fingerprintStore != null && !partial) {
+      final String fingerprint = FingerprintStore.fingerprint(jsonResult);
+      final boolean unchanged = fingerprintStore.matches(resourceURI, fingerprint);
+      in.setHeader(FINGERPRINT_HEADER, fingerprint);
+      in.setHeader(UNCHANGED_HEADER, unchanged);
+      if (unchanged && skipUnchanged) {
+        logger.debug("JSON for {} is unchanged; stopping exchange", resourceURI);
+        exchange.setProperty(Exchange.ROUTE_STOP, Boolean.TRUE);
+      }
+    }
+  }
+
+  @Override
+  public void start() {
+    if (fingerprintStore != null && fingerprintSaveInterval > 0) {
+      final FingerprintStore store = fingerprintStore;
+      fingerprintSaveScheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+        final Thread thread = new Thread(r, "fingerprint-save");
+        thread.setDaemon(true);
+        return thread;
+      });
+      fingerprintSaveScheduler.scheduleWithFixedDelay(() -> {
+        try {
+          store.save();
+        } catch (IOException e) {
+          logger.warn("Unable to save fingerprints to {}: {}", store.getFile(), e.getMessage());
+        }
+      }, fingerprintSaveInterval, fingerprintSaveInterval, TimeUnit.SECONDS);
+    }
+    if (profiler != null) {
+      try {
+        profiler.register();
+      } catch (JMException e) {
+        logger.warn("Unable to register LDPath profiler with JMX: {}", e.getMessage());
+      }
+    }
+  }
+
+  @Override
+  public void stop() throws IOException {
+    synchronized (this) {
+      if (cachingBackend != null) {
+        cachingBackend.shutdown();
+        cachingBackend = null;
+      }
+    }
+    if (fingerprintSaveScheduler != null) {
+      fingerprintSaveScheduler.shutdownNow();
+      fingerprintSaveScheduler = null;
+    }
+    if (fingerprintStore != null) {
+      fingerprintStore.save();
+    }
+    if (dependencyIndex != null) {
+      dependencyIndex.save();
+    }
+    if (profiler != null) {
+      profiler.logReport();
+      try {
+        profiler.unregister();
+      } catch (JMException e) {
+        logger.warn("Unable to unregister LDPath profiler from JMX: {}", e.getMessage());
+      }
+    }
+  }
+
+  /**
+   * Returns the LD cache backend, creating and initializing it if this is
+   * the first use since the processor was created or stopped.
+   *
+   * @return the LD cache backend
+   */
+  private LDCachingBackend getCachingBackend() {
+    NegativeCachingBackend backend = cachingBackend;
+    if (backend == null) {
+      synchronized (this) {
+        backend = cachingBackend;
+        if (backend == null) {
+          final LDCachingBackend baseBackend;
+          if (sharedCacheName != null) {
+            baseBackend = SharedCachingBackends.acquire(sharedCacheName, this::createBaseCachingBackend);
+          } else {
+            baseBackend = createBaseCachingBackend();
+          }
+          backend = new NegativeCachingBackend(baseBackend, negativeCache);
+          backend.initialize();
+          cachingBackend = backend;
+        }
+      }
+    }
+    return backend;
+  }
+
+  /**
+   * Removes the given resource from the LD cache, so that it is retrieved
+   * again the next time it is read. Routes should call this (see
+   * {@link DependentResourcesProcessor}) when a resource that other
+   * resources link to has changed, before processing those resources again.
+   *
+   * @param resourceUri the "external" URI of the resource
+   */
+  public void evict(final String resourceUri) {
+    getCachingBackend().removeEntry(new URIImpl(resourceUri));
+  }
+
+  /**
+   * Returns the path memo of the given LD cache backend, or null if it does
+   * not have one.
+   */
+  private static PathMemo getPathMemo(final LDCachingBackend backend) {
+    final MemoInvalidatingCachingBackend memoBackend =
+        ForwardingCachingBackend.find(backend, MemoInvalidatingCachingBackend.class);
+    return memoBackend == null ? null : memoBackend.getMemo();
+  }
+
+  /**
+   * Creates the LDClient configuration for an exchange. Each exchange has its
+   * own configuration, as the HTTP client carries the exchange's
+   * authorization and forwarding headers, and exchanges may be processed
+   * concurrently.
+   *
+   * @param httpClient the HTTP client for the exchange
+   * @return the client configuration
+   */
+  private ClientConfiguration createClientConfiguration(final HttpClient httpClient) {
+    final ClientConfiguration clientConfig = new ClientConfiguration();
+
+    Endpoint endpoint = new LinkedDataEndpoint();
+    endpoint.setType(ProxiedLinkedDataProvider.PROVIDER_NAME);
+    endpoint.setPriority(PRIORITY_HIGH);
+    clientConfig.addEndpoint(endpoint);
+
+    Set<DataProvider> providers = new HashSet<>();
+    providers.add(provider);
+    clientConfig.setProviders(providers);
+
+    clientConfig.setHttpClient(httpClient);
+    return clientConfig;
+  }
+
+  /**
+   * Returns the URIs of the resources contained (via ldp:contains) in the
+   * given resource, as recorded in the LD cache when the resource was last
+   * processed.
+   *
+   * @param resourceUri the "external" URI of the container
+   * @return the "external" URIs of the contained resources
+   */
+  public Set<String> getContainedResources(final String resourceUri) {
+    final CacheEntry entry = getCachingBackend().getEntry(new URIImpl(resourceUri));
+    if (entry == null || entry.getTriples() == null) {
+      return Collections.emptySet();
+    }
+    final Set<String> contained = new LinkedHashSet<>();
+    for (final Statement statement : entry.getTriples().filter(new URIImpl(resourceUri), LDP_CONTAINS, null)) {
+      contained.add(statement.getObject().stringValue());
+    }
+    return contained;
+  }
+
+  /**
+   * Creates the (uninitialized) Infinispan backend, wrapped to intern the
+   * values of cached triples, to invalidate the path memo, and to persist it
+   * to the cache snapshot file, if those are enabled.
+   *
+   * @return the LD cache backend
+   */
+  private LDCachingBackend createBaseCachingBackend() {
+    LDCachingBackend infinispanBackend = new LDCachingInfinispanBackend();
+    if (internTerms) {
+      infinispanBackend = new InterningCachingBackend(infinispanBackend, new ValueInterner(internerMaxSize));
+    }
+    if (memoizePaths) {
+      infinispanBackend = new MemoInvalidatingCachingBackend(infinispanBackend,
+          new PathMemo(pathMemoMaxEntries, pathMemoTtl));
+    }
+    if (cacheSnapshotFile == null) {
+      return infinispanBackend;
+    }
+    final SnapshotCachingBackend snapshotBackend = new SnapshotCachingBackend(infinispanBackend, cacheSnapshotFile);
+    snapshotBackend.setInterval(cacheSnapshotInterval);
+    snapshotBackend.setMaxAge(cacheSnapshotMaxAge);
+    snapshotBackend.setPredicateFilter(provider.getPredicateFilter());
+    return snapshotBackend;
   }
 
   protected String getAuthToken(final Exchange exchange, final String issuer) {
@@ -207,8 +545,17 @@ public class LdpathProcessor implements Processor, Serializable {
     try (CloseableHttpClient httpClient = HttpClientBuilder.create().build()) {
       final HttpHead request = new HttpHead(containerBasedUri);
       request.addHeader(new BasicHeader(AUTHORIZATION, "Bearer " + authToken));
+      final Deadline deadline = Deadline.current();
+      if (deadline != null) {
+        final int remaining = (int) Math.max(1, Math.min(Integer.MAX_VALUE, deadline.remainingMillis()));
+        request.setConfig(RequestConfig.custom()
+            .setConnectionRequestTimeout(remaining)
+            .setConnectTimeout(remaining)
+            .setSocketTimeout(remaining)
+            .build());
+      }
 
-      final HttpResponse response = httpClient.execute(request);
+      final HttpResponse response = executeLimited(httpClient, request);
       logger.debug("Got: {} for HEAD {}", response.getStatusLine().getStatusCode(), containerBasedUri);
 
       final Header[] responseHeaders = response.getAllHeaders();
@@ -228,38 +575,151 @@ public class LdpathProcessor implements Processor, Serializable {
       }
     } catch(IOException ioe) {
       logger.error("I/O error retrieving HEAD {}", containerBasedUri);
+    } catch (DeadlineExceededException e) {
+      // handled by the deadline policy, as for a HEAD request that times out
+      logger.warn("Deadline passed waiting to send HEAD {}: {}", containerBasedUri, e.getMessage());
     }
 
     logger.debug("Returning LinkedDataResourceUrl of {}", containerBasedUri);
     return containerBasedUri;
   }
 
+  /**
+   * Executes the given request, waiting first for the concurrency limiter
+   * (if any) to allow a request to the target host. A 5xx response, or a
+   * timeout not caused by the deadline, is reported to the limiter as an
+   * overload of the host.
+   *
+   * @throws DeadlineExceededException if the deadline passes while waiting
+   */
+  private HttpResponse executeLimited(final HttpClient httpClient, final HttpHead request) throws IOException {
+    final HostConcurrencyLimiter limiter = concurrencyLimiter;
+    if (limiter == null) {
+      return httpClient.execute(request);
+    }
+    final String host = ProxiedLinkedDataProvider.getHost(request.getURI().toURL());
+    try (HostConcurrencyLimiter.Permit permit = limiter.acquire(host)) {
+      try {
+        final HttpResponse response = httpClient.execute(request);
+        if (response.getStatusLine().getStatusCode() >= 500) {
+          permit.overloaded();
+        }
+        return response;
+      } catch (InterruptedIOException e) {
+        // includes SocketTimeoutException and HttpClient's ConnectTimeoutException
+        if (ProxiedLinkedDataProvider.isOverloaded(NegativeCache.FailureClass.TIMEOUT)) {
+          permit.overloaded();
+        }
+        throw e;
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Interrupted while waiting to send HEAD " + request.getURI());
+    }
+  }
+
   /**
    * Execute the LDPath query, Map
    *
    * @param ldpath the LDPath class performing the query
+   * @param backend the backend the LDPath class queries
    * @param uri the "external" resource URI
+   * @param deadline the deadline for the exchange, or null
    * @return a Map containing the results of the query.
    */
-  private Map<String, Collection<?>> executeQuery(final LDPath<Value> ldpath, final String uri) throws LDPathParseException {
-    final Map<String, Collection<?>> results = ldpath.programQuery(new URIImpl(uri), new StringReader(query));
+  private Map<String, Collection<?>> executeQuery(final LDPath<Value> ldpath, final MemoizingLDCacheBackend backend,
+                                                  final String uri, final Deadline deadline)
+      throws LDPathParseException {
+    final Map<String, Collection<?>> results;
+    final PathMemo memo = backend.getMemo();
+    if (profiler == null && deadline == null && memo == null) {
+      results = ldpath.programQuery(new URIImpl(uri), new StringReader(query));
+    } else {
+      final Program<Value> program = ldpath.parseProgram(new StringReader(query));
+      final Collection<FieldMapping<?, Value>> fields = memo == null
+          ? program.getFields()
+          : MemoizingSelector.memoize(program, memo, backend);
+      results = evaluateFields(fields, backend, new URIImpl(uri), deadline);
+    }
     for (Map.Entry<String, Collection<?>> entry : results.entrySet()) {
       logger.debug("LDPath result: Key: {} Value: {}", entry.getKey(), entry.getValue());
     }
     return results;
   }
 
+  /**
+   * Evaluates the fields of the program one at a time, so that each can be
+   * profiled, and the deadline checked between them.
+   *
+   * @param fields the fields of the parsed LDPath program
+   * @param backend the backend the program is evaluated against
+   * @param context the resource the program is evaluated for
+   * @param deadline the deadline for the exchange, or null
+   * @return a Map containing the results of the fields evaluated
+   */
+  private Map<String, Collection<?>> evaluateFields(final Collection<FieldMapping<?, Value>> fields,
+                                                    final LDCacheBackend backend, final Value context,
+                                                    final Deadline deadline) {
+    final LdpathProfiler profiler = this.profiler;
+    final Map<String, Collection<?>> results = new HashMap<>();
+    try {
+      for (final FieldMapping<?, Value> field : fields) {
+        if (deadline != null) {
+          deadline.check("evaluating field " + field.getFieldName());
+        }
+        if (profiler == null) {
+          results.put(field.getFieldName(), field.getValues(backend, context));
+        } else {
+          results.put(field.getFieldName(), profiler.evaluate(field, backend, context));
+        }
+      }
+    } catch (DeadlineExceededException e) {
+      if (deadlinePolicy != DeadlinePolicy.PARTIAL) {
+        throw e;
+      }
+      logger.warn("Returning {} of {} fields for {}: {}", results.size(), fields.size(), context,
+          e.getMessage());
+      return results;
+    }
+    if (profiler != null) {
+      profiler.evaluationCompleted();
+    }
+    return results;
+  }
+
   /**
    * Executes the LDPath query, returning a JSON-formatted string
    *
    * @param ldpath the LDPath class performing the query
+   * @param backend the backend the LDPath class queries
    * @param uri the "external" resource URI
+   * @param deadline the deadline for the exchange, or null
    * @return a JSON-formatted string representing the results from the query.
    * @throws LDPathParseException if an LDPath parsing problem occurs
    * @throws JsonProcessingException if a JSON parsing problem occurs
    */
-  private String execute(final LDPath<Value> ldpath, final String uri) throws LDPathParseException, JsonProcessingException {
-    return objectMapper.writeValueAsString(executeQuery(ldpath, uri));
+  private String execute(final LDPath<Value> ldpath, final MemoizingLDCacheBackend backend, final String uri,
+                         final Deadline deadline) throws LDPathParseException, JsonProcessingException {
+    return objectMapper.writeValueAsString(executeQuery(ldpath, backend, uri, deadline));
+  }
+
+  /**
+   * Returns the hosts that requests to the repository are sent to: the host
+   * of the internal repository URL, and of the container-based URI of the
+   * resource being processed.
+   */
+  private Set<String> getRepositoryHosts(final String containerBasedUri) {
+    final Set<String> hosts = new HashSet<>();
+    for (final String url : Arrays.asList(ProxiedLinkedDataProvider.getRepoInternalUrl(), containerBasedUri)) {
+      if (url != null) {
+        try {
+          hosts.add(ProxiedLinkedDataProvider.getHost(new URL(url)));
+        } catch (MalformedURLException e) {
+          logger.warn("Cannot parse repository URL '{}'", url);
+        }
+      }
+    }
+    return hosts;
   }
 
   private String getForwardedHost(final URL resourceUrl) {
@@ -289,5 +749,398 @@ public class LdpathProcessor implements Processor, Serializable {
    */
   public void setQuery(String query) {
     this.query = query;
+    updatePredicateFilter();
+  }
+
+  /**
+   * Sets the predicate filter of the provider from the current query and
+   * the "filterTriples" and "sharedCacheName" properties.
+   */
+  private void updatePredicateFilter() {
+    Set<String> predicates = null;
+    if (filterTriples && query != null) {
+      if (sharedCacheName != null) {
+        logger.warn("Not filtering triples, because the LD cache is shared as '{}'", sharedCacheName);
+      } else {
+        predicates = ProgramPredicates.fromProgram(query);
+        if (predicates == null) {
+          logger.info("Not filtering triples, because the predicates of the LDPath query cannot be determined");
+        } else {
+          logger.debug("Filtering triples to {} predicates", predicates.size());
+        }
+      }
+    }
+    provider.setPredicateFilter(predicates);
+  }
+
+  public NegativeCache getNegativeCache() {
+    return negativeCache;
+  }
+
+  /**
+   * Sets the cache used to remember failed retrievals of linked resources,
+   * so that documents linking to a missing or failing resource do not each
+   * wait for the same failure. The time-to-live for each class of failure is
+   * configured on the negative cache. When null, failures are not remembered
+   * beyond the LDCache defaults.
+   *
+   * @param negativeCache the negative cache
+   */
+  public void setNegativeCache(NegativeCache negativeCache) {
+    this.negativeCache = negativeCache;
+    final NegativeCachingBackend backend = cachingBackend;
+    if (backend != null) {
+      backend.setNegativeCache(negativeCache);
+    }
+    provider.setNegativeCache(negativeCache);
+  }
+
+  public HostConcurrencyLimiter getConcurrencyLimiter() {
+    return concurrencyLimiter;
+  }
+
+  /**
+   * Sets the limiter for concurrent requests to each host, which the
+   * "describedBy" HEAD requests and all linked data retrievals wait for.
+   * Setting the same limiter on several processors bounds their combined
+   * load on each host. When null (the default), requests are not limited.
+   *
+   * @param concurrencyLimiter the concurrency limiter
+   */
+  public void setConcurrencyLimiter(HostConcurrencyLimiter concurrencyLimiter) {
+    this.concurrencyLimiter = concurrencyLimiter;
+    provider.setConcurrencyLimiter(concurrencyLimiter);
+  }
+
+  public String getPreferInclude() {
+    return preferInclude;
+  }
+
+  /**
+   * Sets the preference URIs to include in the "Prefer" header of linked
+   * data requests sent to the repository, so that fcrepo leaves out triples
+   * the LDPath query does not use.
+   *
+   * @param preferInclude space-separated preference URIs
+   */
+  public void setPreferInclude(String preferInclude) {
+    this.preferInclude = preferInclude;
+  }
+
+  public String getPreferOmit() {
+    return preferOmit;
+  }
+
+  /**
+   * Sets the preference URIs to omit in the "Prefer" header sent to the
+   * repository, such as "http://www.w3.org/ns/ldp#PreferContainment" or
+   * "http://fedora.info/definitions/fcrepo#ServerManaged".
+   *
+   * @param preferOmit space-separated preference URIs
+   */
+  public void setPreferOmit(String preferOmit) {
+    this.preferOmit = preferOmit;
+  }
+
+  public String getAcceptHeader() {
+    return acceptHeader;
+  }
+
+  /**
+   * Sets the "Accept" header of linked data requests sent to the
+   * repository, to ask for a syntax that is faster to parse, for example
+   * "application/n-triples, text/turtle;q=0.9". When null (the default), the
+   * LDClient default is used.
+   *
+   * @param acceptHeader the "Accept" header value
+   */
+  public void setAcceptHeader(String acceptHeader) {
+    this.acceptHeader = acceptHeader;
+  }
+
+  public String getSharedCacheName() {
+    return sharedCacheName;
+  }
+
+  /**
+   * Sets the name of the shared LD cache backend to use. Processors with
+   * the same name use a single backend, which is shut down when the last of
+   * them stops; the cache snapshot and path memo settings of the first
+   * processor to use it apply. When null (the default), the processor uses
+   * its own backend.
+   *
+   * @param sharedCacheName the shared cache name
+   */
+  public void setSharedCacheName(String sharedCacheName) {
+    this.sharedCacheName = sharedCacheName;
+    updatePredicateFilter();
+  }
+
+  public boolean isFilterTriples() {
+    return filterTriples;
+  }
+
+  /**
+   * Sets whether to drop triples the LDPath query cannot read (see
+   * {@link ProgramPredicates}) from retrieved resources before they are
+   * cached. Because the filtered triples are what is cached, this is not done
+   * for processors using a shared cache, and a cache snapshot written with a
+   * different set of predicates (after the query changes) is not loaded.
+   *
+   * @param filterTriples true to filter triples
+   */
+  public void setFilterTriples(boolean filterTriples) {
+    this.filterTriples = filterTriples;
+    updatePredicateFilter();
+  }
+
+  public LdpathProfiler getProfiler() {
+    return profiler;
+  }
+
+  /**
+   * Sets the profiler that records per-field evaluation statistics: the
+   * fields of the LDPath query are then evaluated one at a time, and the
+   * time, distinct nodes visited and linked resource fetches of each are
+   * recorded. The profiler is registered with JMX when the processor is
+   * started, and its report is logged when it is stopped. When null (the
+   * default), the query is evaluated without profiling.
+   *
+   * @param profiler the profiler
+   */
+  public void setProfiler(LdpathProfiler profiler) {
+    this.profiler = profiler;
+  }
+
+  public long getDeadline() {
+    return deadline;
+  }
+
+  /**
+   * Sets the time (in milliseconds) allowed for the HEAD request, linked
+   * data retrievals and evaluation of the LDPath query for each exchange.
+   * HTTP timeouts and waits for the concurrency limiter are shortened to the
+   * time remaining, and no further resources are retrieved once it has
+   * passed.
+   *
+   * @param deadline the time allowed, or 0 (the default) for no limit
+   */
+  public void setDeadline(long deadline) {
+    this.deadline = deadline;
+  }
+
+  public DeadlinePolicy getDeadlinePolicy() {
+    return deadlinePolicy;
+  }
+
+  /**
+   * Sets what to do when the deadline for an exchange passes. With FAIL
+   * (the default), the exchange fails with a
+   * {@link DeadlineExceededException}; with PARTIAL, the JSON of the fields
+   * evaluated so far is returned, and the {@value #PARTIAL_HEADER} header is
+   * set to true. Partial results are not fingerprinted, and their
+   * dependencies are not recorded.
+   *
+   * @param deadlinePolicy the deadline policy
+   */
+  public void setDeadlinePolicy(DeadlinePolicy deadlinePolicy) {
+    this.deadlinePolicy = deadlinePolicy;
+  }
+
+  public boolean isMemoizePaths() {
+    return memoizePaths;
+  }
+
+  /**
+   * Sets whether to memoize the values the rest of each field's path in the
+   * LDPath query reaches from a node (see {@link MemoizingSelector}), so
+   * that paths through nodes many documents link to, such as vocabulary
+   * terms, are single lookups after the first document. Memoized values are discarded
+   * when an LD cache entry they were read from is replaced or removed, and
+   * expire with the earliest expiring of those entries.
+   *
+   * @param memoizePaths true to memoize sub-paths
+   */
+  public void setMemoizePaths(boolean memoizePaths) {
+    this.memoizePaths = memoizePaths;
+  }
+
+  public int getPathMemoMaxEntries() {
+    return pathMemoMaxEntries;
+  }
+
+  /**
+   * Sets the maximum number of (node, sub-path) values to memoize.
+   *
+   * @param pathMemoMaxEntries the maximum number of entries
+   */
+  public void setPathMemoMaxEntries(int pathMemoMaxEntries) {
+    this.pathMemoMaxEntries = pathMemoMaxEntries;
+  }
+
+  public long getPathMemoTtl() {
+    return pathMemoTtl;
+  }
+
+  /**
+   * Sets the longest time (in seconds) memoized values are used before
+   * they are read from the LD cache again.
+   *
+   * @param pathMemoTtl the time-to-live
+   */
+  public void setPathMemoTtl(long pathMemoTtl) {
+    this.pathMemoTtl = pathMemoTtl;
+  }
+
+  public boolean isInternTerms() {
+    return internTerms;
+  }
+
+  /**
+   * Sets whether to replace the RDF values of cached triples with canonical
+   * instances (see {@link ValueInterner}), so that URIs and literals
+   * repeated across cache entries are only held in memory once.
+   *
+   * @param internTerms true to intern values
+   */
+  public void setInternTerms(boolean internTerms) {
+    this.internTerms = internTerms;
+  }
+
+  public int getInternerMaxSize() {
+    return internerMaxSize;
+  }
+
+  /**
+   * Sets the maximum number of distinct values the interner tracks. Beyond
+   * it, entries are evicted to make room for new values.
+   *
+   * @param internerMaxSize the maximum number of values
+   */
+  public void setInternerMaxSize(int internerMaxSize) {
+    this.internerMaxSize = internerMaxSize;
+  }
+
+  public File getCacheSnapshotFile() {
+    return cacheSnapshotFile;
+  }
+
+  /**
+   * Sets the file used to persist the LD cache between restarts. The cache
+   * contents are saved to it when the backend is shut down (and
+   * periodically, if an interval is set), and loaded from it when the
+   * backend is created. When null (the default), the cache starts empty.
+   *
+   * @param cacheSnapshotFile the snapshot file
+   */
+  public void setCacheSnapshotFile(File cacheSnapshotFile) {
+    this.cacheSnapshotFile = cacheSnapshotFile;
+  }
+
+  public long getCacheSnapshotInterval() {
+    return cacheSnapshotInterval;
+  }
+
+  /**
+   * Sets how often (in seconds) the LD cache snapshot is written while the
+   * processor is running, in addition to when it is stopped.
+   *
+   * @param cacheSnapshotInterval the snapshot interval, or 0 to only write
+   *                              the snapshot when stopped
+   */
+  public void setCacheSnapshotInterval(long cacheSnapshotInterval) {
+    this.cacheSnapshotInterval = cacheSnapshotInterval;
+  }
+
+  public long getCacheSnapshotMaxAge() {
+    return cacheSnapshotMaxAge;
+  }
+
+  /**
+   * Sets the maximum age (in seconds) of an LD cache snapshot that will be
+   * loaded. Older snapshots are ignored, and the cache starts empty.
+   *
+   * @param cacheSnapshotMaxAge the maximum snapshot age, or 0 for no limit
+   */
+  public void setCacheSnapshotMaxAge(long cacheSnapshotMaxAge) {
+    this.cacheSnapshotMaxAge = cacheSnapshotMaxAge;
+  }
+
+  public DependencyIndex getDependencyIndex() {
+    return dependencyIndex;
+  }
+
+  /**
+   * Sets the index to record the other resources read while evaluating the
+   * LDPath query for each resource in (see {@link DependencyRecorder}), so
+   * that the resources to process again when a linked resource changes can
+   * be found (see {@link DependentResourcesProcessor}). The index is saved
+   * when the processor is stopped. When null (the default), dependencies
+   * are not recorded. Nothing is recorded
+   * for a partial result (see {@link #setDeadline}), which may not have
+   * read every dependency.
+   *
+   * @param dependencyIndex the dependency index
+   */
+  public void setDependencyIndex(DependencyIndex dependencyIndex) {
+    this.dependencyIndex = dependencyIndex;
+  }
+
+  public FingerprintStore getFingerprintStore() {
+    return fingerprintStore;
+  }
+
+  /**
+   * Sets the store used to detect JSON results that are unchanged since the
+   * last time they were delivered. The {@value #FINGERPRINT_HEADER} header is
+   * set to a fingerprint of each result, and the {@value #UNCHANGED_HEADER}
+   * header to whether it matches the stored one. The store is only read
+   * here; the fingerprint is recorded by a {@link FingerprintCommitProcessor}
+   * placed after the delivery step, so that a failed delivery is retried.
+   * When null (the default), no fingerprints are computed.
+   * <p>
+   * The store is saved when the processor is stopped, and periodically if a
+   * save interval is set (see {@link #setFingerprintSaveInterval(long)}).
+   * Fingerprints committed since the last save are lost if the JVM exits
+   * without stopping the processor; the resources they were recorded for are
+   * then treated as changed and delivered again, which costs a redundant
+   * update but never loses one.
+   *
+   * @param fingerprintStore the fingerprint store
+   */
+  public void setFingerprintStore(FingerprintStore fingerprintStore) {
+    this.fingerprintStore = fingerprintStore;
+  }
+
+  public long getFingerprintSaveInterval() {
+    return fingerprintSaveInterval;
+  }
+
+  /**
+   * Sets how often (in seconds) the fingerprint store is saved while the
+   * processor is running, which bounds the fingerprints lost by a crash.
+   * Only changed stores are written. Takes effect when the processor is
+   * started.
+   *
+   * @param fingerprintSaveInterval the save interval, or 0 (the default) to
+   *                                only save when the processor is stopped
+   */
+  public void setFingerprintSaveInterval(long fingerprintSaveInterval) {
+    this.fingerprintSaveInterval = fingerprintSaveInterval;
+  }
+
+  public boolean isSkipUnchanged() {
+    return skipUnchanged;
+  }
+
+  /**
+   * Sets whether exchanges whose JSON result is unchanged should be stopped,
+   * instead of only being marked with the {@value #UNCHANGED_HEADER} header.
+   * Has no effect unless a fingerprint store is set.
+   *
+   * @param skipUnchanged true to stop exchanges with unchanged results
+   */
+  public void setSkipUnchanged(boolean skipUnchanged) {
+    this.skipUnchanged = skipUnchanged;
   }
 }
@@ -1,9 +1,16 @@
 package edu.umd.lib.camel.processors;
 
 import edu.umd.lib.camel.utils.CsvWithoutHeaderOutput;
+import edu.umd.lib.camel.utils.PredicateFilterStreamRDF;
+import edu.umd.lib.camel.utils.QueryPredicates;
+import edu.umd.lib.camel.utils.SpooledBody;
 import org.apache.camel.Exchange;
 import org.apache.camel.Message;
 import org.apache.camel.Processor;
+import org.apache.jena.graph.Node;
+import org.apache.jena.graph.NodeFactory;
+import org.apache.jena.query.Dataset;
+import org.apache.jena.query.DatasetFactory;
 import org.apache.jena.query.Query;
 import org.apache.jena.query.QueryExecution;
 import org.apache.jena.query.QueryExecutionFactory;
@@ -11,33 +18,111 @@ import org.apache.jena.query.QueryFactory;
 import org.apache.jena.query.QuerySolutionMap;
 import org.apache.jena.query.ResultSet;
 import org.apache.jena.query.ResultSetFormatter;
+import org.apache.jena.query.SortCondition;
 import org.apache.jena.rdf.model.Model;
 import org.apache.jena.rdf.model.ModelFactory;
 import org.apache.jena.rdf.model.RDFNode;
+import org.apache.jena.riot.Lang;
+import org.apache.jena.riot.RDFParser;
+import org.apache.jena.riot.system.StreamRDF;
+import org.apache.jena.riot.system.StreamRDFLib;
 import org.apache.jena.shared.NoWriterForLangException;
+import org.apache.jena.sparql.algebra.Algebra;
+import org.apache.jena.sparql.algebra.OpVars;
+import org.apache.jena.sparql.core.Var;
+import org.apache.jena.sparql.engine.ResultSetStream;
+import org.apache.jena.sparql.engine.binding.Binding;
+import org.apache.jena.sparql.engine.binding.BindingFactory;
+import org.apache.jena.sparql.engine.binding.BindingMap;
+import org.apache.jena.sparql.engine.iterator.QueryIterPlainWrapper;
+import org.apache.jena.sparql.expr.Expr;
 import org.apache.jena.sparql.resultset.ResultsFormat;
+import org.apache.jena.sparql.syntax.Element;
+import org.apache.jena.sparql.syntax.ElementData;
+import org.apache.jena.sparql.syntax.ElementGroup;
+import org.apache.jena.sparql.syntax.ElementNamedGraph;
+import org.apache.jena.sparql.syntax.ElementPathBlock;
+import org.apache.jena.sparql.syntax.ElementService;
+import org.apache.jena.sparql.syntax.ElementSubQuery;
+import org.apache.jena.sparql.syntax.ElementTriplesBlock;
+import org.apache.jena.sparql.syntax.ElementVisitorBase;
+import org.apache.jena.sparql.syntax.ElementWalker;
+import org.apache.jena.system.Txn;
+import org.apache.jena.tdb2.TDB2Factory;
+import org.apache.jena.tdb2.sys.TDBInternal;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.ByteArrayOutputStream;
+import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.io.Serializable;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.stream.Stream;
 
+/**
+ * Processor that runs a SPARQL SELECT or CONSTRUCT query against the RDF/XML
+ * message body, and replaces the body with the query results.
+ * <p>
+ * When "filterTriples" is true, the processor determines which predicates
+ * the query's graph patterns can match (see {@link QueryPredicates}), and
+ * only keeps triples with those predicates while parsing the body, so that
+ * large resource descriptions do not have to be held in memory in full.
+ * <p>
+ * When "spillThreshold" is set, message bodies larger than the threshold
+ * (in bytes) are loaded into a TDB2 dataset in a temporary directory, rather
+ * than into an in-memory model, and the directory is deleted after the query
+ * has run. This keeps heap usage bounded regardless of the body size.
+ * <p>
+ * When "batch" is true, the processor handles an aggregated group of
+ * messages: each message body is loaded into its own named graph of one
+ * dataset, and the query is run once for the whole group, with each
+ * message's binding headers supplied in a VALUES block. The results are
+ * split back out into the body of each message. This amortizes the cost of
+ * setting up the query over the group.
+ */
 public class SparqlQueryProcessor implements Processor, Serializable {
   private final Logger logger = LoggerFactory.getLogger(SparqlQueryProcessor.class);
 
   public static final String CSV_WITHOUT_HEADER = "csvWithoutHeader";
 
+  private static final String LITERAL_BINDING_PREFIX = "CamelSparqlQueryBinding-Literal-";
+
+  private static final String URI_BINDING_PREFIX = "CamelSparqlQueryBinding-URI-";
+
+  private static final String BATCH_GRAPH_PREFIX = "urn:x-sparql-batch:";
+
+  private static final Var GRAPH_VAR = Var.alloc("sparqlBatchGraph");
+
   private String query;
 
   private String resultsFormatName;
 
+  private boolean filterTriples = false;
+
+  private long spillThreshold = 0;
+
+  private boolean batch = false;
+
   public SparqlQueryProcessor() {}
 
   @Override
   public void process(final Exchange exchange) {
+    if (batch) {
+      processBatch(exchange);
+      return;
+    }
     final Message in = exchange.getIn();
     in.setBody(executeQuery(in));
   }
@@ -50,14 +135,14 @@ public class SparqlQueryProcessor implements Processor, Serializable {
     for (Map.Entry<String, Object> entry : message.getHeaders().entrySet()) {
       final String key = entry.getKey();
       logger.trace("Found key {}", key);
-      if (key.matches("^CamelSparqlQueryBinding-Literal-.+")) {
-        final String bindingName = extractBindingName(key);
+      if (isBindingHeader(key, LITERAL_BINDING_PREFIX)) {
+        final String bindingName = extractBindingName(key, LITERAL_BINDING_PREFIX);
         final String bindingValue = (String) entry.getValue();
         logger.debug("Binding ?{} to literal: \"{}\"", bindingName, bindingValue);
         bindings.put(bindingName, model.createLiteral(bindingValue));
       }
-      if (key.matches("^CamelSparqlQueryBinding-URI-.+")) {
-        final String bindingName = extractBindingName(key);
+      if (isBindingHeader(key, URI_BINDING_PREFIX)) {
+        final String bindingName = extractBindingName(key, URI_BINDING_PREFIX);
         final String bindingValue = (String) entry.getValue();
         logger.debug("Binding ?{} to URI {}", bindingName, bindingValue);
         bindings.put(bindingName, model.createResource(bindingValue));
@@ -67,27 +152,102 @@ public class SparqlQueryProcessor implements Processor, Serializable {
     return bindings;
   }
 
-  private String extractBindingName(final String key) {
-    final String[] parts = key.split("-", 3);
-    logger.debug("Extracted {} from key name {}", parts[2], key);
+  private static boolean isBindingHeader(final String key, final String prefix) {
+    return key.length() > prefix.length() && key.startsWith(prefix);
+  }
+
+  private String extractBindingName(final String key, final String prefix) {
+    final String bindingName = key.substring(prefix.length());
+    logger.debug("Extracted {} from key name {}", bindingName, key);
     //TODO: verify bindingName is a valid SPARQL variable name
-    return parts[2];
+    return bindingName;
   }
 
   protected String executeQuery(Message in) {
     logger.debug("Executing query: {}, resultFormatName: {}", query, resultsFormatName);
     final InputStream body = in.getBody(InputStream.class);
     logger.debug("Got InputStream (Message ID: {})", in.getMessageId());
+    // Create a new query
+    final Query q = QueryFactory.create(query);
+    final Set<String> predicates = filterTriples ? QueryPredicates.fromQuery(q) : null;
+
+    if (spillThreshold <= 0) {
+      return executeInMemory(q, body, predicates, in);
+    }
+
+    try (SpooledBody spooledBody = SpooledBody.read(body, spillThreshold)) {
+      if (spooledBody.isSpilled()) {
+        logger.debug("Body size {} exceeds spill threshold {}; using on-disk dataset",
+            spooledBody.size(), spillThreshold);
+        return executeOnDisk(q, spooledBody, predicates, in);
+      }
+      try (InputStream spooledStream = spooledBody.openStream()) {
+        return executeInMemory(q, spooledStream, predicates, in);
+      }
+    } catch (IOException e) {
+      throw new UncheckedIOException("Unable to read message body", e);
+    }
+  }
+
+  /**
+   * Loads the body into an in-memory model, and runs the query against it.
+   */
+  private String executeInMemory(final Query q, final InputStream body, final Set<String> predicates,
+                                 final Message in) {
     // XXX: creating the default model appears to be where the Camel route is failing
     final Model model = ModelFactory.createDefaultModel();
     logger.debug("Created default model");
-    model.read(body, in.getHeader("CamelFcrepoUri", String.class), "RDF/XML");
+    if (predicates == null) {
+      model.read(body, in.getHeader("CamelFcrepoUri", String.class), "RDF/XML");
+    } else {
+      readBody(body, in, predicates, StreamRDFLib.graph(model.getGraph()));
+    }
     logger.debug("Read message body into model");
+    return runQuery(q, model, in);
+  }
 
-    final Map<String, RDFNode> bindings = parseBindings(in, model);
+  /**
+   * Loads the body into a TDB2 dataset in a temporary directory, and runs the
+   * query against it. The dataset is deleted afterwards.
+   */
+  private String executeOnDisk(final Query q, final SpooledBody body, final Set<String> predicates,
+                               final Message in) throws IOException {
+    final Path location = Files.createTempDirectory("sparql-tdb2-");
+    final Dataset dataset = TDB2Factory.connectDataset(location.toString());
+    try {
+      Txn.executeWrite(dataset, () -> {
+        try (InputStream bodyStream = body.openStream()) {
+          readBody(bodyStream, in, predicates, StreamRDFLib.dataset(dataset.asDatasetGraph()));
+        } catch (IOException e) {
+          throw new UncheckedIOException("Unable to read spooled message body", e);
+        }
+      });
+      logger.debug("Read message body into dataset at {}", location);
+      return Txn.calculateRead(dataset, () -> runQuery(q, dataset.getDefaultModel(), in));
+    } finally {
+      TDBInternal.expel(dataset.asDatasetGraph());
+      deleteDirectory(location);
+    }
+  }
 
-    // Create a new query
-    final Query q = QueryFactory.create(query);
+  /**
+   * Parses the RDF/XML body into the destination, keeping only triples with
+   * the given predicates (if any).
+   */
+  private void readBody(final InputStream body, final Message in, final Set<String> predicates,
+                        final StreamRDF destination) {
+    final String baseUri = in.getHeader("CamelFcrepoUri", String.class);
+    if (predicates == null) {
+      RDFParser.create().source(body).base(baseUri).lang(Lang.RDFXML).parse(destination);
+    } else {
+      final PredicateFilterStreamRDF filter = new PredicateFilterStreamRDF(destination, predicates);
+      RDFParser.create().source(body).base(baseUri).lang(Lang.RDFXML).parse(filter);
+      logger.debug("Dropped {} triples that cannot match the query", filter.getDropped());
+    }
+  }
+
+  private String runQuery(final Query q, final Model model, final Message in) {
+    final Map<String, RDFNode> bindings = parseBindings(in, model);
 
     // Execute the query and obtain results
     final ByteArrayOutputStream out = new ByteArrayOutputStream();
@@ -96,19 +256,7 @@ public class SparqlQueryProcessor implements Processor, Serializable {
       logger.debug("Executing SELECT query");
       setInitialBindings(qe, bindings);
       final ResultSet results = qe.execSelect();
-
-      final ResultsFormat resultsFormat = ResultsFormat.lookup(resultsFormatName);
-      if (resultsFormat == null) {
-        if ((resultsFormatName != null) && CSV_WITHOUT_HEADER.toLowerCase().equals(resultsFormatName.toLowerCase())) {
-          final CsvWithoutHeaderOutput csvOutput = new CsvWithoutHeaderOutput();
-          csvOutput.format(out, results);
-        } else {
-          logger.error("Unknown resultsFormatName: " + resultsFormatName);
-          throw new IllegalArgumentException("Unknown resultsFormatName: " + resultsFormatName);
-        }
-      } else {
-        ResultSetFormatter.output(out, results, resultsFormat);
-      }
+      formatResults(results, out);
     } else if (q.isConstructType()) {
       logger.debug("Executing CONSTRUCT query");
       setInitialBindings(qe, bindings);
@@ -127,6 +275,268 @@ public class SparqlQueryProcessor implements Processor, Serializable {
     return out.toString();
   }
 
+  private void formatResults(final ResultSet results, final OutputStream out) {
+    final ResultsFormat resultsFormat = ResultsFormat.lookup(resultsFormatName);
+    if (resultsFormat == null) {
+      if ((resultsFormatName != null) && CSV_WITHOUT_HEADER.toLowerCase().equals(resultsFormatName.toLowerCase())) {
+        final CsvWithoutHeaderOutput csvOutput = new CsvWithoutHeaderOutput();
+        csvOutput.format(out, results);
+      } else {
+        logger.error("Unknown resultsFormatName: " + resultsFormatName);
+        throw new IllegalArgumentException("Unknown resultsFormatName: " + resultsFormatName);
+      }
+    } else {
+      ResultSetFormatter.output(out, results, resultsFormat);
+    }
+  }
+
+  /**
+   * Runs the query against each message of an aggregated exchange. Each
+   * message body is loaded into its own named graph of a single dataset;
+   * SELECT queries that can be rewritten are run once over all the graphs
+   * (see {@link #runBatchedSelect}), and other queries are run against each
+   * graph in turn. The body of each grouped exchange is set to its results,
+   * and the body of the aggregated exchange to the list of grouped exchanges.
+   */
+  private void processBatch(final Exchange exchange) {
+    final List<Exchange> grouped = getGroupedExchanges(exchange);
+    logger.debug("Executing query for a batch of {} messages: {}", grouped.size(), query);
+    final Query q = QueryFactory.create(query);
+    final Set<String> predicates = filterTriples ? QueryPredicates.fromQuery(q) : null;
+
+    final Dataset dataset = DatasetFactory.create();
+    final List<Node> graphNames = new ArrayList<>();
+    final List<Map<String, RDFNode>> bindings = new ArrayList<>();
+    for (int i = 0; i < grouped.size(); i++) {
+      final Message message = grouped.get(i).getIn();
+      final Node graphName = NodeFactory.createURI(BATCH_GRAPH_PREFIX + i);
+      final Model model = dataset.getNamedModel(graphName.getURI());
+      readBody(message.getBody(InputStream.class), message, predicates, StreamRDFLib.graph(model.getGraph()));
+      graphNames.add(graphName);
+      bindings.add(parseBindings(message, model));
+    }
+    logger.debug("Read {} message bodies into named graphs", grouped.size());
+
+    final List<String> results;
+    final Set<String> boundVarNames = new TreeSet<>();
+    for (final Map<String, RDFNode> messageBindings : bindings) {
+      boundVarNames.addAll(messageBindings.keySet());
+    }
+    if (canBatch(q, boundVarNames)) {
+      results = runBatchedSelect(q, dataset, graphNames, bindings);
+    } else {
+      logger.debug("Query cannot be batched; running it against each named graph");
+      results = new ArrayList<>();
+      for (int i = 0; i < grouped.size(); i++) {
+        results.add(runQuery(q, dataset.getNamedModel(graphNames.get(i).getURI()), grouped.get(i).getIn()));
+      }
+    }
+
+    for (int i = 0; i < grouped.size(); i++) {
+      grouped.get(i).getIn().setBody(results.get(i));
+    }
+    exchange.getIn().setBody(grouped);
+  }
+
+  /**
+   * Returns the exchanges of an aggregated exchange, from the
+   * "CamelGroupedExchange" property or the body.
+   */
+  private List<Exchange> getGroupedExchanges(final Exchange exchange) {
+    List<?> grouped = exchange.getProperty(Exchange.GROUPED_EXCHANGE, List.class);
+    if (grouped == null) {
+      grouped = exchange.getIn().getBody(List.class);
+    }
+    if (grouped == null) {
+      throw new IllegalArgumentException("Batch mode requires an aggregated exchange with a list of exchanges");
+    }
+    final List<Exchange> exchanges = new ArrayList<>(grouped.size());
+    for (final Object item : grouped) {
+      if (!(item instanceof Exchange)) {
+        throw new IllegalArgumentException("Batch mode requires an aggregated exchange with a list of exchanges");
+      }
+      exchanges.add((Exchange) item);
+    }
+    return exchanges;
+  }
+
+  /**
+   * Returns true if running the query once over all the named graphs, with
+   * the graph as an extra result variable, gives the same results for each
+   * graph as running it against each graph. This is not the case for
+   * queries whose results depend on the whole result set (aggregates,
+   * LIMIT and OFFSET), or that choose their own graphs.
+   * <p>
+   * The bindings are joined in with a VALUES block, which only matches
+   * binding them up front when the bound variables are used in plain triple
+   * patterns; if a bound variable appears in an OPTIONAL, FILTER, BIND,
+   * MINUS or other nested pattern, the query is not batched.
+   *
+   * @param q the query
+   * @param boundVarNames the names of the variables bound by any message
+   */
+  static boolean canBatch(final Query q, final Set<String> boundVarNames) {
+    if (!q.isSelectType() || q.hasLimit() || q.hasOffset() || q.hasGroupBy() || q.hasAggregators()
+        || q.hasHaving() || q.hasValues() || q.hasDatasetDescription()) {
+      return false;
+    }
+    final boolean[] selectsGraphs = { false };
+    ElementWalker.walk(q.getQueryPattern(), new ElementVisitorBase() {
+      @Override
+      public void visit(final ElementNamedGraph el) {
+        selectsGraphs[0] = true;
+      }
+
+      @Override
+      public void visit(final ElementService el) {
+        selectsGraphs[0] = true;
+      }
+
+      @Override
+      public void visit(final ElementSubQuery el) {
+        selectsGraphs[0] = true;
+      }
+    });
+    return !selectsGraphs[0] && !usesOutsideTriplePatterns(q.getQueryPattern(), boundVarNames);
+  }
+
+  /**
+   * Returns true if any of the named variables is mentioned in the pattern
+   * by anything other than a top-level triple pattern.
+   */
+  private static boolean usesOutsideTriplePatterns(final Element queryPattern, final Set<String> varNames) {
+    if (varNames.isEmpty()) {
+      return false;
+    }
+    final List<Element> elements = queryPattern instanceof ElementGroup
+        ? ((ElementGroup) queryPattern).getElements() : Collections.singletonList(queryPattern);
+    for (final Element element : elements) {
+      if (element instanceof ElementPathBlock || element instanceof ElementTriplesBlock) {
+        continue;
+      }
+      final ElementGroup group = new ElementGroup();
+      group.addElement(element);
+      for (final Var var : OpVars.mentionedVars(Algebra.compile(group))) {
+        if (varNames.contains(var.getVarName())) {
+          return true;
+        }
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Runs a SELECT query once over all the named graphs, as
+   * <pre>
+   * SELECT vars ?graph WHERE { GRAPH ?graph { VALUES (?graph bindings) { ... } pattern } }
+   * </pre>
+   * with a row of the VALUES block for each message, holding its graph name
+   * and bindings, and splits the results by graph. Only used for queries that
+   * {@link #canBatch} accepts for the bound variables.
+   *
+   * @return the formatted results for each graph
+   */
+  private List<String> runBatchedSelect(final Query q, final Dataset dataset, final List<Node> graphNames,
+                                        final List<Map<String, RDFNode>> bindings) {
+    final List<String> resultVars = q.getResultVars();
+
+    final ElementGroup pattern = new ElementGroup();
+    pattern.addElement(createValuesBlock(graphNames, bindings));
+    final Element queryPattern = q.getQueryPattern();
+    if (queryPattern instanceof ElementGroup) {
+      for (final Element element : ((ElementGroup) queryPattern).getElements()) {
+        pattern.addElement(element);
+      }
+    } else {
+      pattern.addElement(queryPattern);
+    }
+    final ElementGroup where = new ElementGroup();
+    where.addElement(new ElementNamedGraph(GRAPH_VAR, pattern));
+
+    final Query batched = new Query();
+    batched.setQuerySelectType();
+    batched.setPrefixMapping(q.getPrefixMapping());
+    batched.setBaseURI(q.getBaseURI());
+    batched.setDistinct(q.isDistinct());
+    batched.setReduced(q.isReduced());
+    for (final String varName : resultVars) {
+      final Var var = Var.alloc(varName);
+      final Expr expr = q.getProject().getExpr(var);
+      if (expr == null) {
+        batched.addResultVar(var);
+      } else {
+        batched.addResultVar(var, expr);
+      }
+    }
+    batched.addResultVar(GRAPH_VAR);
+    if (q.hasOrderBy()) {
+      for (final SortCondition condition : q.getOrderBy()) {
+        batched.addOrderBy(condition);
+      }
+    }
+    batched.setQueryPattern(where);
+    logger.debug("Batched query: {}", batched);
+
+    final Map<Node, List<Binding>> rows = new HashMap<>();
+    for (final Node graphName : graphNames) {
+      rows.put(graphName, new ArrayList<>());
+    }
+    try (QueryExecution qe = QueryExecutionFactory.create(batched, dataset)) {
+      final ResultSet results = qe.execSelect();
+      while (results.hasNext()) {
+        final Binding binding = results.nextBinding();
+        final List<Binding> graphRows = rows.get(binding.get(GRAPH_VAR));
+        if (graphRows != null) {
+          graphRows.add(binding);
+        }
+      }
+    }
+
+    final List<String> formatted = new ArrayList<>(graphNames.size());
+    for (final Node graphName : graphNames) {
+      final ByteArrayOutputStream out = new ByteArrayOutputStream();
+      final ResultSet graphResults = new ResultSetStream(resultVars, dataset.getDefaultModel(),
+          QueryIterPlainWrapper.create(rows.get(graphName).iterator()));
+      formatResults(graphResults, out);
+      formatted.add(out.toString());
+    }
+    return formatted;
+  }
+
+  /**
+   * Creates the VALUES block holding the graph name and the bindings of each
+   * message. Variables a message has no binding for are left undefined.
+   */
+  private static ElementData createValuesBlock(final List<Node> graphNames,
+                                               final List<Map<String, RDFNode>> bindings) {
+    final Set<String> varNames = new TreeSet<>();
+    for (final Map<String, RDFNode> messageBindings : bindings) {
+      varNames.addAll(messageBindings.keySet());
+    }
+    final ElementData values = new ElementData();
+    values.add(GRAPH_VAR);
+    for (final String varName : varNames) {
+      values.add(Var.alloc(varName));
+    }
+    for (int i = 0; i < graphNames.size(); i++) {
+      final BindingMap row = BindingFactory.create();
+      row.add(GRAPH_VAR, graphNames.get(i));
+      for (final Map.Entry<String, RDFNode> entry : bindings.get(i).entrySet()) {
+        row.add(Var.alloc(entry.getKey()), entry.getValue().asNode());
+      }
+      values.add(row);
+    }
+    return values;
+  }
+
+  private void deleteDirectory(final Path directory) {
+    try (Stream<Path> paths = Files.walk(directory)) {
+      paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+    } catch (IOException e) {
+      logger.warn("Unable to delete temporary dataset directory {}: {}", directory, e.getMessage());
+    }
+  }
+
   private void setInitialBindings(QueryExecution qe, Map<String, RDFNode> bindings) {
     if (bindings != null && !bindings.isEmpty()) {
       QuerySolutionMap map = new QuerySolutionMap();
@@ -152,4 +562,50 @@ public class SparqlQueryProcessor implements Processor, Serializable {
   public void setResultsFormatName(String resultsFormatName) {
     this.resultsFormatName = resultsFormatName;
   }
+
+  public boolean isFilterTriples() {
+    return filterTriples;
+  }
+
+  /**
+   * Sets whether to drop triples that cannot match the query while parsing
+   * the message body. Has no effect for queries whose predicates cannot be
+   * determined.
+   *
+   * @param filterTriples true to filter triples
+   */
+  public void setFilterTriples(boolean filterTriples) {
+    this.filterTriples = filterTriples;
+  }
+
+  public boolean isBatch() {
+    return batch;
+  }
+
+  /**
+   * Sets whether the processor expects an aggregated exchange (with a list of
+   * exchanges as its body, or in its "CamelGroupedExchange" property), and
+   * runs the query against all of their bodies at once. The spill threshold
+   * does not apply in batch mode.
+   *
+   * @param batch true to process aggregated exchanges
+   */
+  public void setBatch(boolean batch) {
+    this.batch = batch;
+  }
+
+  public long getSpillThreshold() {
+    return spillThreshold;
+  }
+
+  /**
+   * Sets the body size (in bytes) above which the body is loaded into a
+   * temporary on-disk dataset instead of memory.
+   *
+   * @param spillThreshold the spill threshold, or 0 (the default) to always
+   *                       load the body into memory
+   */
+  public void setSpillThreshold(long spillThreshold) {
+    this.spillThreshold = spillThreshold;
+  }
 }
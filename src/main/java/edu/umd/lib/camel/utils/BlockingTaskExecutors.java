@@ -0,0 +1,41 @@
+package edu.umd.lib.camel.utils;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+
+/**
+ * Creates executors for tasks that spend most of their time blocked on I/O,
+ * such as retrieving linked data resources.
+ * <p>
+ * This is the Java 8 version, which runs the tasks on a fork-join pool with
+ * one platform thread per concurrent task. The multi-release JAR includes a
+ * Java 21 version (in src/main/java21), which runs each task on its own
+ * virtual thread instead.
+ */
+public final class BlockingTaskExecutors {
+  private BlockingTaskExecutors() {}
+
+  /**
+   * Returns a new executor that runs at most the given number of tasks at
+   * once.
+   *
+   * @param name the prefix for the names of the executor's threads
+   * @param maxConcurrency the maximum number of tasks run at once
+   * @return the executor
+   */
+  public static ExecutorService newExecutor(final String name, final int maxConcurrency) {
+    return new ForkJoinPool(maxConcurrency, pool -> {
+      final ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+      thread.setName(name + "-" + thread.getPoolIndex());
+      return thread;
+    }, null, false);
+  }
+
+  /**
+   * @return true if the executors run tasks on virtual threads
+   */
+  public static boolean usesVirtualThreads() {
+    return false;
+  }
+}
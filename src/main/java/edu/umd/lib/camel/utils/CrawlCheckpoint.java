@@ -0,0 +1,120 @@
+package edu.umd.lib.camel.utils;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Collection;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static java.nio.file.StandardOpenOption.APPEND;
+import static java.nio.file.StandardOpenOption.CREATE;
+
+/**
+ * Records the URIs a crawl has completed, so that an interrupted crawl can be
+ * resumed without repeating them.
+ * <p>
+ * URIs are appended to the file (one per line) as they are completed, and
+ * the file is flushed after each call to {@link #addAll(Collection)}, so that
+ * at most the URIs of an unfinished call are lost if the process stops.
+ */
+public class CrawlCheckpoint {
+  private static final Logger logger = LoggerFactory.getLogger(CrawlCheckpoint.class);
+
+  private final Set<String> completed = ConcurrentHashMap.newKeySet();
+
+  private final File file;
+
+  private BufferedWriter writer;
+
+  /**
+   * Creates a checkpoint persisted to the given file, loading any URIs
+   * already recorded in it.
+   *
+   * @param file the checkpoint file
+   * @throws IOException if the file exists, but cannot be read
+   */
+  public CrawlCheckpoint(final File file) throws IOException {
+    this.file = Objects.requireNonNull(file);
+    load();
+  }
+
+  public boolean contains(final String uri) {
+    return completed.contains(uri);
+  }
+
+  public int size() {
+    return completed.size();
+  }
+
+  public File getFile() {
+    return file;
+  }
+
+  /**
+   * Records the given URIs as completed.
+   *
+   * @param uris the completed URIs
+   * @throws IOException if the URIs cannot be written to the file
+   */
+  public synchronized void addAll(final Collection<String> uris) throws IOException {
+    if (uris.isEmpty()) {
+      return;
+    }
+    if (writer == null) {
+      writer = Files.newBufferedWriter(file.toPath(), StandardCharsets.UTF_8, CREATE, APPEND);
+    }
+    for (final String uri : uris) {
+      if (completed.add(uri)) {
+        writer.write(uri);
+        writer.newLine();
+      }
+    }
+    writer.flush();
+  }
+
+  /**
+   * Closes the checkpoint file.
+   *
+   * @throws IOException if an I/O error occurs
+   */
+  public synchronized void close() throws IOException {
+    if (writer != null) {
+      writer.close();
+      writer = null;
+    }
+  }
+
+  /**
+   * Closes and deletes the checkpoint file, once the crawl is complete.
+   *
+   * @throws IOException if an I/O error occurs
+   */
+  public synchronized void delete() throws IOException {
+    close();
+    completed.clear();
+    Files.deleteIfExists(file.toPath());
+  }
+
+  private void load() throws IOException {
+    if (!file.exists()) {
+      return;
+    }
+    try (BufferedReader reader = Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8)) {
+      String line;
+      while ((line = reader.readLine()) != null) {
+        if (!line.isEmpty()) {
+          completed.add(line);
+        }
+      }
+    }
+    logger.info("Loaded {} completed URIs from checkpoint {}", completed.size(), file);
+  }
+}
@@ -0,0 +1,318 @@
+package edu.umd.lib.camel.utils;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+
+/**
+ * Records, for each resource, the URIs of the other resources read when its
+ * output was last generated, and answers the reverse question: which
+ * resources have to be processed again when a given resource changes.
+ * <p>
+ * To keep the index compact, each URI is stored once, and referred to by an
+ * integer id; the dependencies of a resource, and the dependents of each
+ * URI, are held as sorted arrays of ids.
+ * <p>
+ * The index is held in memory. If a file is provided, the index already
+ * stored in it is loaded on creation, and the current index is written back
+ * to it when {@link #save()} is called.
+ */
+public class DependencyIndex {
+  private static final Logger logger = LoggerFactory.getLogger(DependencyIndex.class);
+
+  private static final int FILE_MAGIC = 0x55444931; // "UDI1"
+
+  private final Map<String, Integer> ids = new HashMap<>();
+
+  private final List<String> uris = new ArrayList<>();
+
+  private final Map<Integer, int[]> dependencies = new HashMap<>();
+
+  private final Map<Integer, IdSet> dependents = new HashMap<>();
+
+  private final File file;
+
+  private boolean dirty = false;
+
+  /**
+   * Creates an in-memory dependency index.
+   */
+  public DependencyIndex() {
+    this.file = null;
+  }
+
+  /**
+   * Creates a dependency index persisted to the given file.
+   *
+   * @param file the file to load the index from and save it to
+   * @throws IOException if the file exists, but cannot be read
+   */
+  public DependencyIndex(final File file) throws IOException {
+    this.file = Objects.requireNonNull(file);
+    load();
+  }
+
+  /**
+   * Records the URIs of the resources read when the output for the given
+   * resource was generated, replacing those recorded before. The resource
+   * itself is not recorded as one of its dependencies.
+   *
+   * @param resourceUri the resource URI
+   * @param dependencyUris the URIs of the resources read
+   * @return true if the dependencies differ from those recorded before
+   */
+  public synchronized boolean record(final String resourceUri, final Collection<String> dependencyUris) {
+    final int resource = idOf(resourceUri);
+    final int[] updated = dependencyUris.stream()
+        .filter(uri -> !uri.equals(resourceUri))
+        .mapToInt(this::idOf)
+        .sorted()
+        .distinct()
+        .toArray();
+    final int[] previous = dependencies.get(resource);
+    if (previous != null && Arrays.equals(previous, updated)) {
+      return false;
+    }
+    removeDependencies(resource);
+    if (updated.length > 0) {
+      dependencies.put(resource, updated);
+      for (final int dependency : updated) {
+        dependents.computeIfAbsent(dependency, id -> new IdSet()).add(resource);
+      }
+    }
+    dirty = true;
+    return true;
+  }
+
+  /**
+   * Forgets the dependencies of the given resource. Routes should call this
+   * when the resource is deleted.
+   *
+   * @param resourceUri the resource URI
+   */
+  public synchronized void remove(final String resourceUri) {
+    final Integer resource = ids.get(resourceUri);
+    if (resource != null && removeDependencies(resource)) {
+      dirty = true;
+    }
+  }
+
+  /**
+   * Returns the URIs of the resources that read the given resource when
+   * their output was last generated.
+   *
+   * @param uri the URI of the changed resource
+   * @return the URIs of the dependent resources
+   */
+  public synchronized List<String> getDependents(final String uri) {
+    final Integer id = ids.get(uri);
+    final IdSet set = id == null ? null : dependents.get(id);
+    if (set == null) {
+      return Collections.emptyList();
+    }
+    final List<String> result = new ArrayList<>(set.size);
+    for (int i = 0; i < set.size; i++) {
+      result.add(uris.get(set.ids[i]));
+    }
+    return result;
+  }
+
+  /**
+   * Returns the URIs of the resources read when the output for the given
+   * resource was last generated.
+   *
+   * @param resourceUri the resource URI
+   * @return the URIs of the resources read
+   */
+  public synchronized List<String> getDependencies(final String resourceUri) {
+    final Integer id = ids.get(resourceUri);
+    final int[] resourceDependencies = id == null ? null : dependencies.get(id);
+    if (resourceDependencies == null) {
+      return Collections.emptyList();
+    }
+    final List<String> result = new ArrayList<>(resourceDependencies.length);
+    for (final int dependency : resourceDependencies) {
+      result.add(uris.get(dependency));
+    }
+    return result;
+  }
+
+  /**
+   * Returns the number of resources with recorded dependencies.
+   *
+   * @return the number of resources
+   */
+  public synchronized int size() {
+    return dependencies.size();
+  }
+
+  public File getFile() {
+    return file;
+  }
+
+  /**
+   * Writes the index to the file, if one was provided and there are changes
+   * since the last save. URIs that no longer appear in the index are left
+   * out. The file is replaced atomically.
+   *
+   * @throws IOException if an I/O error occurs
+   */
+  public synchronized void save() throws IOException {
+    if (file == null || !dirty) {
+      return;
+    }
+    // renumber the URIs still in use, so the file does not grow with every
+    // URI ever recorded
+    final int[] fileIds = new int[uris.size()];
+    Arrays.fill(fileIds, -1);
+    final List<String> fileUris = new ArrayList<>();
+    for (final Map.Entry<Integer, int[]> entry : dependencies.entrySet()) {
+      assignFileId(entry.getKey(), fileIds, fileUris);
+      for (final int dependency : entry.getValue()) {
+        assignFileId(dependency, fileIds, fileUris);
+      }
+    }
+
+    final Path target = file.toPath();
+    final Path tmp = Files.createTempFile(target.toAbsolutePath().getParent(), file.getName(), ".tmp");
+    try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+      out.writeInt(FILE_MAGIC);
+      out.writeInt(fileUris.size());
+      for (final String uri : fileUris) {
+        out.writeUTF(uri);
+      }
+      out.writeInt(dependencies.size());
+      for (final Map.Entry<Integer, int[]> entry : dependencies.entrySet()) {
+        out.writeInt(fileIds[entry.getKey()]);
+        out.writeInt(entry.getValue().length);
+        for (final int dependency : entry.getValue()) {
+          out.writeInt(fileIds[dependency]);
+        }
+      }
+    } catch (IOException e) {
+      Files.deleteIfExists(tmp);
+      throw e;
+    }
+    Files.move(tmp, target, REPLACE_EXISTING, ATOMIC_MOVE);
+    dirty = false;
+    logger.debug("Saved dependencies of {} resources ({} URIs) to {}", dependencies.size(), fileUris.size(), file);
+  }
+
+  private void assignFileId(final int id, final int[] fileIds, final List<String> fileUris) {
+    if (fileIds[id] < 0) {
+      fileIds[id] = fileUris.size();
+      fileUris.add(uris.get(id));
+    }
+  }
+
+  private void load() throws IOException {
+    if (!file.exists()) {
+      logger.info("Dependency index file {} does not exist; starting empty", file);
+      return;
+    }
+    try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file.toPath())))) {
+      if (in.readInt() != FILE_MAGIC) {
+        throw new IOException(file + " is not a dependency index file");
+      }
+      final int uriCount = in.readInt();
+      for (int i = 0; i < uriCount; i++) {
+        idOf(in.readUTF());
+      }
+      final int resourceCount = in.readInt();
+      for (int i = 0; i < resourceCount; i++) {
+        final int resource = in.readInt();
+        final int[] resourceDependencies = new int[in.readInt()];
+        for (int j = 0; j < resourceDependencies.length; j++) {
+          resourceDependencies[j] = in.readInt();
+        }
+        Arrays.sort(resourceDependencies);
+        dependencies.put(resource, resourceDependencies);
+        for (final int dependency : resourceDependencies) {
+          dependents.computeIfAbsent(dependency, id -> new IdSet()).add(resource);
+        }
+      }
+    }
+    logger.info("Loaded dependencies of {} resources from {}", dependencies.size(), file);
+  }
+
+  private int idOf(final String uri) {
+    final Integer id = ids.get(uri);
+    if (id != null) {
+      return id;
+    }
+    final int newId = uris.size();
+    uris.add(uri);
+    ids.put(uri, newId);
+    return newId;
+  }
+
+  /**
+   * Removes the recorded dependencies of a resource, returning true if it
+   * had any.
+   */
+  private boolean removeDependencies(final int resource) {
+    final int[] previous = dependencies.remove(resource);
+    if (previous == null) {
+      return false;
+    }
+    for (final int dependency : previous) {
+      final IdSet set = dependents.get(dependency);
+      if (set != null && set.remove(resource) && set.size == 0) {
+        dependents.remove(dependency);
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Growable, sorted array of ids.
+   */
+  private static final class IdSet {
+    private int[] ids = new int[4];
+
+    private int size = 0;
+
+    void add(final int id) {
+      final int index = Arrays.binarySearch(ids, 0, size, id);
+      if (index >= 0) {
+        return;
+      }
+      final int insertAt = -index - 1;
+      if (size == ids.length) {
+        ids = Arrays.copyOf(ids, size * 2);
+      }
+      System.arraycopy(ids, insertAt, ids, insertAt + 1, size - insertAt);
+      ids[insertAt] = id;
+      size++;
+    }
+
+    boolean remove(final int id) {
+      final int index = Arrays.binarySearch(ids, 0, size, id);
+      if (index < 0) {
+        return false;
+      }
+      System.arraycopy(ids, index + 1, ids, index, size - index - 1);
+      size--;
+      return true;
+    }
+  }
+}
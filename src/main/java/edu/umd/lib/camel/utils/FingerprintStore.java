@@ -0,0 +1,172 @@
+package edu.umd.lib.camel.utils;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+
+/**
+ * Stores a fingerprint (SHA-256 hash) of the most recent output generated
+ * for each resource URI, so that output which has not changed since it was
+ * last sent downstream can be detected.
+ * <p>
+ * Routes should only {@link #commit} the fingerprint of an output once it
+ * has been delivered, so that output whose delivery failed is not treated
+ * as unchanged when it is generated again.
+ * <p>
+ * Fingerprints are held in memory. If a file is provided, any fingerprints
+ * already stored in it are loaded on creation, and the current fingerprints
+ * are written back to it when {@link #save()} is called.
+ */
+public class FingerprintStore {
+  private static final Logger logger = LoggerFactory.getLogger(FingerprintStore.class);
+
+  private static final String DIGEST_ALGORITHM = "SHA-256";
+
+  private final Map<String, String> fingerprints = new ConcurrentHashMap<>();
+
+  private final File file;
+
+  private volatile boolean dirty = false;
+
+  /**
+   * Creates an in-memory fingerprint store.
+   */
+  public FingerprintStore() {
+    this.file = null;
+  }
+
+  /**
+   * Creates a fingerprint store persisted to the given file.
+   *
+   * @param file the file to load fingerprints from and save them to
+   * @throws IOException if the file exists, but cannot be read
+   */
+  public FingerprintStore(final File file) throws IOException {
+    this.file = Objects.requireNonNull(file);
+    load();
+  }
+
+  /**
+   * Returns true if the given fingerprint matches the fingerprint last
+   * recorded for the given URI.
+   *
+   * @param uri the resource URI
+   * @param fingerprint the fingerprint, from {@link #fingerprint(String)}
+   * @return true if the fingerprints match, false otherwise
+   */
+  public boolean matches(final String uri, final String fingerprint) {
+    return fingerprint.equals(fingerprints.get(uri));
+  }
+
+  /**
+   * Records the given fingerprint for the given URI. Routes should call this
+   * once the output the fingerprint was computed from has been delivered.
+   *
+   * @param uri the resource URI
+   * @param fingerprint the fingerprint, from {@link #fingerprint(String)}
+   */
+  public void commit(final String uri, final String fingerprint) {
+    if (!fingerprint.equals(fingerprints.put(uri, fingerprint))) {
+      dirty = true;
+    }
+  }
+
+  /**
+   * Forgets the fingerprint for the given URI, so that the next output for
+   * it is treated as changed. Routes should call this when delivering the
+   * output downstream fails.
+   *
+   * @param uri the resource URI
+   */
+  public void remove(final String uri) {
+    if (fingerprints.remove(uri) != null) {
+      dirty = true;
+    }
+  }
+
+  public int size() {
+    return fingerprints.size();
+  }
+
+  public File getFile() {
+    return file;
+  }
+
+  /**
+   * Writes the fingerprints to the file, if one was provided and there are
+   * changes since the last save. The file is replaced atomically.
+   *
+   * @throws IOException if an I/O error occurs
+   */
+  public synchronized void save() throws IOException {
+    if (file == null || !dirty) {
+      return;
+    }
+    dirty = false;
+    final Path target = file.toPath();
+    final Path tmp = Files.createTempFile(target.toAbsolutePath().getParent(), file.getName(), ".tmp");
+    try (BufferedWriter writer = Files.newBufferedWriter(tmp, StandardCharsets.UTF_8)) {
+      for (Map.Entry<String, String> entry : fingerprints.entrySet()) {
+        writer.write(entry.getValue());
+        writer.write(' ');
+        writer.write(entry.getKey());
+        writer.newLine();
+      }
+    } catch (IOException e) {
+      dirty = true;
+      Files.deleteIfExists(tmp);
+      throw e;
+    }
+    Files.move(tmp, target, REPLACE_EXISTING, ATOMIC_MOVE);
+    logger.debug("Saved {} fingerprints to {}", fingerprints.size(), file);
+  }
+
+  private void load() throws IOException {
+    if (!file.exists()) {
+      logger.info("Fingerprint file {} does not exist; starting empty", file);
+      return;
+    }
+    try (BufferedReader reader = Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8)) {
+      String line;
+      while ((line = reader.readLine()) != null) {
+        final int space = line.indexOf(' ');
+        if (space > 0) {
+          fingerprints.put(line.substring(space + 1), line.substring(0, space));
+        }
+      }
+    }
+    logger.info("Loaded {} fingerprints from {}", fingerprints.size(), file);
+  }
+
+  /**
+   * Returns the fingerprint of the given content.
+   *
+   * @param content the output generated for a resource
+   * @return the fingerprint
+   */
+  public static String fingerprint(final String content) {
+    try {
+      final MessageDigest digest = MessageDigest.getInstance(DIGEST_ALGORITHM);
+      return Base64.getEncoder().encodeToString(digest.digest(content.getBytes(StandardCharsets.UTF_8)));
+    } catch (NoSuchAlgorithmException e) {
+      // every Java platform is required to support SHA-256
+      throw new IllegalStateException(e);
+    }
+  }
+}
@@ -0,0 +1,55 @@
+package edu.umd.lib.camel.utils;
+
+import org.apache.jena.graph.Node;
+import org.apache.jena.graph.Triple;
+import org.apache.jena.riot.system.StreamRDF;
+import org.apache.jena.riot.system.StreamRDFWrapper;
+import org.apache.jena.sparql.core.Quad;
+
+import java.util.Set;
+
+/**
+ * StreamRDF that only passes on triples (and quads) whose predicate is in a
+ * given set of URIs.
+ */
+public class PredicateFilterStreamRDF extends StreamRDFWrapper {
+  private final Set<String> predicates;
+
+  private long dropped = 0;
+
+  public PredicateFilterStreamRDF(final StreamRDF other, final Set<String> predicates) {
+    super(other);
+    this.predicates = predicates;
+  }
+
+  @Override
+  public void triple(final Triple triple) {
+    if (accept(triple.getPredicate())) {
+      super.triple(triple);
+    }
+  }
+
+  @Override
+  public void quad(final Quad quad) {
+    if (accept(quad.getPredicate())) {
+      super.quad(quad);
+    }
+  }
+
+  /**
+   * Returns the number of triples and quads that were not passed on.
+   *
+   * @return the number of dropped triples
+   */
+  public long getDropped() {
+    return dropped;
+  }
+
+  private boolean accept(final Node predicate) {
+    if (predicate.isURI() && predicates.contains(predicate.getURI())) {
+      return true;
+    }
+    dropped++;
+    return false;
+  }
+}
@@ -0,0 +1,106 @@
+package edu.umd.lib.camel.utils;
+
+import org.apache.jena.graph.Node;
+import org.apache.jena.graph.Triple;
+import org.apache.jena.query.Query;
+import org.apache.jena.sparql.core.TriplePath;
+import org.apache.jena.sparql.syntax.Element;
+import org.apache.jena.sparql.syntax.ElementPathBlock;
+import org.apache.jena.sparql.syntax.ElementSubQuery;
+import org.apache.jena.sparql.syntax.ElementTriplesBlock;
+import org.apache.jena.sparql.syntax.ElementVisitorBase;
+import org.apache.jena.sparql.syntax.ElementWalker;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Determines the set of predicates the basic graph patterns of a SPARQL
+ * query can match.
+ * <p>
+ * If any pattern has a variable predicate, a negated property set, or the
+ * query uses EXISTS or NOT EXISTS (whose patterns are not walked), the set
+ * of predicates cannot be bounded, and null is returned.
+ */
+public final class QueryPredicates {
+  private static final Pattern EXISTS = Pattern.compile("\\bEXISTS\\b", Pattern.CASE_INSENSITIVE);
+
+  private static final Pattern PATH_URI = Pattern.compile("<([^>]*)>");
+
+  private QueryPredicates() {}
+
+  /**
+   * Returns the URIs of the predicates the given query can match, or null if
+   * they cannot be determined.
+   *
+   * @param query the parsed query
+   * @return the predicate URIs, or null
+   */
+  public static Set<String> fromQuery(final Query query) {
+    final Element pattern = query.getQueryPattern();
+    if (pattern == null || EXISTS.matcher(query.toString()).find()) {
+      return null;
+    }
+
+    final Collector collector = new Collector();
+    ElementWalker.walk(pattern, collector);
+    return collector.unbounded ? null : Collections.unmodifiableSet(collector.predicates);
+  }
+
+  private static class Collector extends ElementVisitorBase {
+    final Set<String> predicates = new HashSet<>();
+
+    boolean unbounded = false;
+
+    @Override
+    public void visit(final ElementTriplesBlock el) {
+      for (final Triple triple : el.getPattern()) {
+        addPredicate(triple.getPredicate());
+      }
+    }
+
+    @Override
+    public void visit(final ElementPathBlock el) {
+      for (final TriplePath triplePath : el.getPattern()) {
+        if (triplePath.isTriple()) {
+          addPredicate(triplePath.getPredicate());
+        } else {
+          addPathPredicates(triplePath.getPath().toString());
+        }
+      }
+    }
+
+    @Override
+    public void visit(final ElementSubQuery el) {
+      final Set<String> subQueryPredicates = fromQuery(el.getQuery());
+      if (subQueryPredicates == null) {
+        unbounded = true;
+      } else {
+        predicates.addAll(subQueryPredicates);
+      }
+    }
+
+    private void addPredicate(final Node predicate) {
+      if (predicate.isURI()) {
+        predicates.add(predicate.getURI());
+      } else {
+        unbounded = true;
+      }
+    }
+
+    private void addPathPredicates(final String path) {
+      if (path.contains("!")) {
+        // negated property set
+        unbounded = true;
+        return;
+      }
+      final Matcher matcher = PATH_URI.matcher(path);
+      while (matcher.find()) {
+        predicates.add(matcher.group(1));
+      }
+    }
+  }
+}
@@ -0,0 +1,97 @@
+package edu.umd.lib.camel.utils;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * A message body read into memory, or, if it is larger than a threshold,
+ * spooled to a temporary file. Closing it deletes the temporary file.
+ */
+public class SpooledBody implements Closeable {
+  private static final int BUFFER_SIZE = 8192;
+
+  private final byte[] bytes;
+
+  private final Path file;
+
+  private final long size;
+
+  private SpooledBody(final byte[] bytes, final Path file, final long size) {
+    this.bytes = bytes;
+    this.file = file;
+    this.size = size;
+  }
+
+  /**
+   * Reads the given stream. If it is longer than the threshold, it is
+   * written to a temporary file instead of being held in memory.
+   *
+   * @param in the stream to read
+   * @param threshold the maximum number of bytes to hold in memory
+   * @return the spooled body
+   * @throws IOException if an I/O error occurs
+   */
+  public static SpooledBody read(final InputStream in, final long threshold) throws IOException {
+    final ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+    final byte[] chunk = new byte[BUFFER_SIZE];
+    long size = 0;
+    int n;
+    while ((n = in.read(chunk)) != -1) {
+      size += n;
+      if (size > threshold) {
+        final Path file = Files.createTempFile("camel-body-", ".tmp");
+        try (OutputStream out = Files.newOutputStream(file)) {
+          buffer.writeTo(out);
+          out.write(chunk, 0, n);
+          while ((n = in.read(chunk)) != -1) {
+            size += n;
+            out.write(chunk, 0, n);
+          }
+        } catch (IOException e) {
+          Files.deleteIfExists(file);
+          throw e;
+        }
+        return new SpooledBody(null, file, size);
+      }
+      buffer.write(chunk, 0, n);
+    }
+    return new SpooledBody(buffer.toByteArray(), null, size);
+  }
+
+  /**
+   * Returns true if the body was larger than the threshold, and was written
+   * to a temporary file.
+   *
+   * @return true if the body is in a temporary file
+   */
+  public boolean isSpilled() {
+    return file != null;
+  }
+
+  public long size() {
+    return size;
+  }
+
+  /**
+   * Returns a new stream over the body.
+   *
+   * @return the body stream
+   * @throws IOException if an I/O error occurs
+   */
+  public InputStream openStream() throws IOException {
+    return file != null ? Files.newInputStream(file) : new ByteArrayInputStream(bytes);
+  }
+
+  @Override
+  public void close() throws IOException {
+    if (file != null) {
+      Files.deleteIfExists(file);
+    }
+  }
+}
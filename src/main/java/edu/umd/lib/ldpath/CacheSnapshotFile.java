@@ -0,0 +1,370 @@
+package edu.umd.lib.ldpath;
+
+import org.apache.marmotta.ldcache.model.CacheEntry;
+import org.openrdf.model.BNode;
+import org.openrdf.model.Literal;
+import org.openrdf.model.Model;
+import org.openrdf.model.Resource;
+import org.openrdf.model.Statement;
+import org.openrdf.model.URI;
+import org.openrdf.model.Value;
+import org.openrdf.model.ValueFactory;
+import org.openrdf.model.impl.TreeModel;
+import org.openrdf.model.impl.ValueFactoryImpl;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.BufferUnderflowException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+import static java.nio.file.StandardOpenOption.READ;
+
+/**
+ * Reads and writes LD cache entries as a compact binary snapshot file.
+ * <p>
+ * The file starts with a header (magic number, format version, creation
+ * time, content key and entry count), followed by the entries. The content
+ * key identifies how the entries were filtered (see
+ * {@link #contentKey(Set)}); a snapshot written with a different key is
+ * ignored, since its entries may lack triples that are now wanted. Every string (URIs,
+ * literal labels, language tags, etc.) is written once, and later
+ * occurrences refer back to it by index, so the many repeated predicate and
+ * vocabulary URIs only take up space once. Snapshots are read through a
+ * memory-mapped buffer.
+ */
+public class CacheSnapshotFile {
+  private static final Logger logger = LoggerFactory.getLogger(CacheSnapshotFile.class);
+
+  private static final int MAGIC = 0x4C44534E;
+
+  private static final int VERSION = 2;
+
+  private static final int NEW_STRING = -1;
+
+  private static final int NULL_STRING = -2;
+
+  private static final byte URI_VALUE = 1;
+
+  private static final byte BNODE_VALUE = 2;
+
+  private static final byte LITERAL_VALUE = 3;
+
+  private static final byte LANGUAGE_LITERAL_VALUE = 4;
+
+  private static final byte TYPED_LITERAL_VALUE = 5;
+
+  private final File file;
+
+  public CacheSnapshotFile(final File file) {
+    this.file = file;
+  }
+
+  public File getFile() {
+    return file;
+  }
+
+  public boolean exists() {
+    return file.exists();
+  }
+
+  /**
+   * Returns the content key for entries filtered to the given predicates: a
+   * hash of the sorted predicate URIs, or the empty string if the entries
+   * are not filtered.
+   *
+   * @param predicates the predicate URIs kept in the entries, or null
+   * @return the content key
+   */
+  public static String contentKey(final Set<String> predicates) {
+    if (predicates == null) {
+      return "";
+    }
+    try {
+      final MessageDigest digest = MessageDigest.getInstance("SHA-256");
+      for (final String predicate : new TreeSet<>(predicates)) {
+        digest.update(predicate.getBytes(StandardCharsets.UTF_8));
+        digest.update((byte) '\n');
+      }
+      return Base64.getEncoder().encodeToString(digest.digest());
+    } catch (NoSuchAlgorithmException e) {
+      // every Java platform is required to support SHA-256
+      throw new IllegalStateException(e);
+    }
+  }
+
+  /**
+   * Writes the given unfiltered entries to the snapshot file, replacing it
+   * atomically.
+   *
+   * @param entries the cache entries
+   * @throws IOException if an I/O error occurs
+   */
+  public void write(final Collection<CacheEntry> entries) throws IOException {
+    write(entries, "");
+  }
+
+  /**
+   * Writes the given entries to the snapshot file, replacing it atomically.
+   *
+   * @param entries the cache entries
+   * @param contentKey the content key of the entries
+   * @throws IOException if an I/O error occurs
+   */
+  public void write(final Collection<CacheEntry> entries, final String contentKey) throws IOException {
+    final Path target = file.toPath();
+    final Path tmp = Files.createTempFile(target.toAbsolutePath().getParent(), file.getName(), ".tmp");
+    try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+      final Writer writer = new Writer(out);
+      out.writeInt(MAGIC);
+      out.writeInt(VERSION);
+      out.writeLong(System.currentTimeMillis());
+      final byte[] key = contentKey.getBytes(StandardCharsets.UTF_8);
+      out.writeInt(key.length);
+      out.write(key);
+      out.writeInt(entries.size());
+      for (final CacheEntry entry : entries) {
+        writer.writeEntry(entry);
+      }
+    } catch (IOException e) {
+      Files.deleteIfExists(tmp);
+      throw e;
+    }
+    Files.move(tmp, target, REPLACE_EXISTING, ATOMIC_MOVE);
+  }
+
+  /**
+   * Reads the entries from a snapshot of unfiltered entries.
+   *
+   * @param maxAge the maximum age of the snapshot, in milliseconds, or 0 for
+   *               no limit
+   * @return the unexpired cache entries
+   * @throws IOException if an I/O error occurs, or the file is not a valid
+   * snapshot
+   * @see #read(long, String)
+   */
+  public List<CacheEntry> read(final long maxAge) throws IOException {
+    return read(maxAge, "");
+  }
+
+  /**
+   * Reads the entries from the snapshot file. Entries that have expired, and
+   * all entries of a snapshot created more than maxAge milliseconds ago, or
+   * with a different content key, are skipped.
+   *
+   * @param maxAge the maximum age of the snapshot, in milliseconds, or 0 for
+   *               no limit
+   * @param contentKey the content key the entries must have been written
+   *                   with
+   * @return the unexpired cache entries
+   * @throws IOException if an I/O error occurs, or the file is not a valid
+   * snapshot
+   */
+  public List<CacheEntry> read(final long maxAge, final String contentKey) throws IOException {
+    try (FileChannel channel = FileChannel.open(file.toPath(), READ)) {
+      if (channel.size() > Integer.MAX_VALUE) {
+        throw new IOException("Snapshot " + file + " is too large to map");
+      }
+      final MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+      if (buffer.getInt() != MAGIC) {
+        throw new IOException(file + " is not an LD cache snapshot");
+      }
+      final int version = buffer.getInt();
+      if (version != VERSION) {
+        throw new IOException("Unsupported LD cache snapshot version " + version + " in " + file);
+      }
+      final long now = System.currentTimeMillis();
+      final long created = buffer.getLong();
+      final byte[] key = new byte[buffer.getInt()];
+      buffer.get(key);
+      final int count = buffer.getInt();
+      final List<CacheEntry> entries = new ArrayList<>(count);
+      if (maxAge > 0 && now - created > maxAge) {
+        return entries;
+      }
+      if (!contentKey.equals(new String(key, StandardCharsets.UTF_8))) {
+        logger.info("Ignoring LD cache snapshot {}, which was filtered differently", file);
+        return entries;
+      }
+
+      final Reader reader = new Reader(buffer);
+      for (int i = 0; i < count; i++) {
+        final CacheEntry entry = reader.readEntry();
+        if (entry.getExpiryDate() == null || entry.getExpiryDate().getTime() > now) {
+          entries.add(entry);
+        }
+      }
+      return entries;
+    } catch (BufferUnderflowException e) {
+      throw new IOException("Snapshot " + file + " is truncated", e);
+    }
+  }
+
+  private static class Writer {
+    private final DataOutputStream out;
+
+    private final Map<String, Integer> strings = new HashMap<>();
+
+    Writer(final DataOutputStream out) {
+      this.out = out;
+    }
+
+    void writeEntry(final CacheEntry entry) throws IOException {
+      writeString(entry.getResource().stringValue());
+      writeDate(entry.getLastRetrieved());
+      writeDate(entry.getExpiryDate());
+      out.writeInt(entry.getUpdateCount() == null ? 0 : entry.getUpdateCount());
+      final Model triples = entry.getTriples();
+      out.writeInt(triples == null ? 0 : triples.size());
+      if (triples != null) {
+        for (final Statement statement : triples) {
+          writeValue(statement.getSubject());
+          writeValue(statement.getPredicate());
+          writeValue(statement.getObject());
+        }
+      }
+    }
+
+    private void writeDate(final Date date) throws IOException {
+      out.writeLong(date == null ? Long.MIN_VALUE : date.getTime());
+    }
+
+    private void writeValue(final Value value) throws IOException {
+      if (value instanceof URI) {
+        out.writeByte(URI_VALUE);
+        writeString(value.stringValue());
+      } else if (value instanceof BNode) {
+        out.writeByte(BNODE_VALUE);
+        writeString(((BNode) value).getID());
+      } else {
+        final Literal literal = (Literal) value;
+        if (literal.getLanguage() != null) {
+          out.writeByte(LANGUAGE_LITERAL_VALUE);
+          writeString(literal.getLabel());
+          writeString(literal.getLanguage());
+        } else if (literal.getDatatype() != null) {
+          out.writeByte(TYPED_LITERAL_VALUE);
+          writeString(literal.getLabel());
+          writeString(literal.getDatatype().stringValue());
+        } else {
+          out.writeByte(LITERAL_VALUE);
+          writeString(literal.getLabel());
+        }
+      }
+    }
+
+    private void writeString(final String s) throws IOException {
+      if (s == null) {
+        out.writeInt(NULL_STRING);
+        return;
+      }
+      final Integer index = strings.get(s);
+      if (index != null) {
+        out.writeInt(index);
+        return;
+      }
+      strings.put(s, strings.size());
+      final byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+      out.writeInt(NEW_STRING);
+      out.writeInt(bytes.length);
+      out.write(bytes);
+    }
+  }
+
+  private static class Reader {
+    private final ByteBuffer buffer;
+
+    private final List<String> strings = new ArrayList<>();
+
+    private final ValueFactory valueFactory = ValueFactoryImpl.getInstance();
+
+    Reader(final ByteBuffer buffer) {
+      this.buffer = buffer;
+    }
+
+    CacheEntry readEntry() throws IOException {
+      final CacheEntry entry = new CacheEntry();
+      entry.setResource(valueFactory.createURI(readString()));
+      entry.setLastRetrieved(readDate());
+      entry.setExpiryDate(readDate());
+      entry.setUpdateCount(buffer.getInt());
+      final int tripleCount = buffer.getInt();
+      final Model triples = new TreeModel();
+      for (int i = 0; i < tripleCount; i++) {
+        final Resource subject = (Resource) readValue();
+        final URI predicate = (URI) readValue();
+        final Value object = readValue();
+        triples.add(valueFactory.createStatement(subject, predicate, object));
+      }
+      entry.setTriples(triples);
+      entry.setTripleCount(triples.size());
+      return entry;
+    }
+
+    private Date readDate() {
+      final long time = buffer.getLong();
+      return time == Long.MIN_VALUE ? null : new Date(time);
+    }
+
+    private Value readValue() throws IOException {
+      final byte type = buffer.get();
+      switch (type) {
+        case URI_VALUE:
+          return valueFactory.createURI(readString());
+        case BNODE_VALUE:
+          return valueFactory.createBNode(readString());
+        case LITERAL_VALUE:
+          return valueFactory.createLiteral(readString());
+        case LANGUAGE_LITERAL_VALUE: {
+          final String label = readString();
+          return valueFactory.createLiteral(label, readString());
+        }
+        case TYPED_LITERAL_VALUE: {
+          final String label = readString();
+          return valueFactory.createLiteral(label, valueFactory.createURI(readString()));
+        }
+        default:
+          throw new IOException("Unknown value type " + type + " in LD cache snapshot");
+      }
+    }
+
+    private String readString() throws IOException {
+      final int ref = buffer.getInt();
+      if (ref == NULL_STRING) {
+        return null;
+      }
+      if (ref != NEW_STRING) {
+        if (ref < 0 || ref >= strings.size()) {
+          throw new IOException("Invalid string reference " + ref + " in LD cache snapshot");
+        }
+        return strings.get(ref);
+      }
+      final byte[] bytes = new byte[buffer.getInt()];
+      buffer.get(bytes);
+      final String s = new String(bytes, StandardCharsets.UTF_8);
+      strings.add(s);
+      return s;
+    }
+  }
+}
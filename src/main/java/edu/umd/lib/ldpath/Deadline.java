@@ -0,0 +1,100 @@
+package edu.umd.lib.ldpath;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A point in time by which the processing of an exchange should be
+ * complete.
+ * <p>
+ * The deadline for the exchange being processed is held in a thread-local
+ * variable, so that the linked data provider and HTTP client, which are
+ * shared by all exchanges, can stop work once it has passed.
+ */
+public final class Deadline {
+  private static final ThreadLocal<Deadline> current = new ThreadLocal<>();
+
+  private final long timeout;
+
+  private final long expiresAt;
+
+  private volatile boolean exceeded = false;
+
+  private Deadline(final long timeout) {
+    this.timeout = timeout;
+    this.expiresAt = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout);
+  }
+
+  /**
+   * Returns a deadline the given number of milliseconds from now.
+   *
+   * @param timeout the time allowed, in milliseconds
+   * @return the deadline
+   */
+  public static Deadline after(final long timeout) {
+    return new Deadline(timeout);
+  }
+
+  /**
+   * @return the deadline for the current thread, or null if there is none
+   */
+  public static Deadline current() {
+    return current.get();
+  }
+
+  /**
+   * Sets the deadline for the current thread.
+   *
+   * @param deadline the deadline, or null to remove it
+   */
+  public static void setCurrent(final Deadline deadline) {
+    if (deadline == null) {
+      current.remove();
+    } else {
+      current.set(deadline);
+    }
+  }
+
+  /**
+   * Checks the deadline for the current thread, if any.
+   *
+   * @param activity what is about to be done, for the exception message
+   * @throws DeadlineExceededException if the deadline has passed
+   */
+  public static void checkCurrent(final String activity) {
+    final Deadline deadline = current.get();
+    if (deadline != null) {
+      deadline.check(activity);
+    }
+  }
+
+  /**
+   * @return the milliseconds left before the deadline, or 0 if it has passed
+   */
+  public long remainingMillis() {
+    return Math.max(0, TimeUnit.NANOSECONDS.toMillis(expiresAt - System.nanoTime()));
+  }
+
+  public boolean isExpired() {
+    return System.nanoTime() - expiresAt >= 0;
+  }
+
+  /**
+   * @return true if a check of this deadline has failed
+   */
+  public boolean isExceeded() {
+    return exceeded;
+  }
+
+  /**
+   * Checks that the deadline has not passed.
+   *
+   * @param activity what is about to be done, for the exception message
+   * @throws DeadlineExceededException if the deadline has passed
+   */
+  public void check(final String activity) {
+    if (isExpired()) {
+      exceeded = true;
+      throw new DeadlineExceededException("Deadline of " + timeout + " ms exceeded before " + activity);
+    }
+  }
+}
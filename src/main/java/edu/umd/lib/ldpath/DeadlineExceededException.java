@@ -0,0 +1,16 @@
+package edu.umd.lib.ldpath;
+
+/**
+ * Thrown when the {@link Deadline} for processing an exchange has passed.
+ * <p>
+ * This is an unchecked exception, so that it passes through LDCache and
+ * LDPath without being handled as a failure to retrieve a resource (which
+ * would be cached).
+ */
+public class DeadlineExceededException extends RuntimeException {
+  private static final long serialVersionUID = 1L;
+
+  public DeadlineExceededException(final String message) {
+    super(message);
+  }
+}
@@ -0,0 +1,44 @@
+package edu.umd.lib.ldpath;
+
+import org.apache.http.HttpRequest;
+import org.apache.http.HttpRequestInterceptor;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.protocol.HttpClientContext;
+import org.apache.http.protocol.HttpContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * HttpClient request interceptor that limits the connection request, connect
+ * and socket timeouts of each request to the time left before the current thread's
+ * {@link Deadline}, so that a slow server cannot hold the exchange past it.
+ */
+public class DeadlineRequestInterceptor implements HttpRequestInterceptor {
+  private static final Logger logger = LoggerFactory.getLogger(DeadlineRequestInterceptor.class);
+
+  @Override
+  public void process(final HttpRequest request, final HttpContext context) {
+    final Deadline deadline = Deadline.current();
+    if (deadline == null) {
+      return;
+    }
+    final HttpClientContext clientContext = HttpClientContext.adapt(context);
+    final RequestConfig config = clientContext.getRequestConfig();
+    // a timeout of 0 means no timeout, so allow at least 1 ms
+    final int remaining = (int) Math.max(1, Math.min(Integer.MAX_VALUE, deadline.remainingMillis()));
+    logger.trace("Limiting timeouts of {} to {} ms", request.getRequestLine(), remaining);
+    clientContext.setRequestConfig(RequestConfig.copy(config)
+        .setConnectionRequestTimeout(limit(config.getConnectionRequestTimeout(), remaining))
+        .setConnectTimeout(limit(config.getConnectTimeout(), remaining))
+        .setSocketTimeout(limit(config.getSocketTimeout(), remaining))
+        .build());
+  }
+
+  /**
+   * Returns the lower of the given timeouts, where a non-positive timeout
+   * is treated as unlimited.
+   */
+  static int limit(final int timeout, final int remaining) {
+    return timeout <= 0 ? remaining : Math.min(timeout, remaining);
+  }
+}
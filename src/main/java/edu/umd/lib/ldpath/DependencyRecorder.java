@@ -0,0 +1,61 @@
+package edu.umd.lib.ldpath;
+
+import org.openrdf.model.URI;
+import org.openrdf.model.Value;
+
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * Records the URIs of the resources read while an LDPath program is
+ * evaluated on the current thread, so that the resources a document depends
+ * on can be found when one of them changes.
+ * <p>
+ * Fragments are removed from the recorded URIs, as a hash URI node is read
+ * from the LD cache entry of the resource it belongs to.
+ */
+public class DependencyRecorder {
+  private static final ThreadLocal<Set<String>> resourcesRead = new ThreadLocal<>();
+
+  private DependencyRecorder() {
+  }
+
+  /**
+   * Starts recording on the current thread, discarding anything recorded
+   * before.
+   */
+  public static void start() {
+    resourcesRead.set(new LinkedHashSet<>());
+  }
+
+  /**
+   * Records that the given node was read, if recording on the current
+   * thread. Only URI nodes are recorded.
+   *
+   * @param node the node
+   */
+  public static void resourceRead(final Value node) {
+    final Set<String> resources = resourcesRead.get();
+    if (resources != null && node instanceof URI) {
+      resources.add(stripFragment(node.stringValue()));
+    }
+  }
+
+  /**
+   * Stops recording on the current thread.
+   *
+   * @return the URIs of the resources read since {@link #start()}, or an
+   * empty set if not recording
+   */
+  public static Set<String> stop() {
+    final Set<String> resources = resourcesRead.get();
+    resourcesRead.remove();
+    return resources == null ? Collections.emptySet() : resources;
+  }
+
+  static String stripFragment(final String uri) {
+    final int hashIndex = uri.indexOf('#');
+    return hashIndex < 0 ? uri : uri.substring(0, hashIndex);
+  }
+}
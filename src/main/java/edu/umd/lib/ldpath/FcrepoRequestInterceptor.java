@@ -0,0 +1,100 @@
+package edu.umd.lib.ldpath;
+
+import org.apache.http.HttpHost;
+import org.apache.http.HttpRequest;
+import org.apache.http.HttpRequestInterceptor;
+import org.apache.http.client.protocol.HttpClientContext;
+import org.apache.http.protocol.HttpContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.apache.http.HttpHeaders.ACCEPT;
+
+/**
+ * HttpClient request interceptor that adds a "Prefer" header, and replaces
+ * the "Accept" header, on GET requests sent to the fcrepo repository.
+ * <p>
+ * The "Prefer" header asks fcrepo to omit (or include) groups of triples,
+ * such as the ldp:contains triples of large containers, or server managed
+ * triples, that are not needed. The "Accept" header can be used to request
+ * a syntax that is faster to parse, such as N-Triples; it must be a syntax
+ * supported by the LDClient RDF parsers.
+ * <p>
+ * Requests to other hosts, such as external vocabularies, are not changed.
+ */
+public class FcrepoRequestInterceptor implements HttpRequestInterceptor {
+  private static final Logger logger = LoggerFactory.getLogger(FcrepoRequestInterceptor.class);
+
+  public static final String PREFER = "Prefer";
+
+  private final Set<String> repositoryHosts;
+
+  private final String preferHeader;
+
+  private final String acceptHeader;
+
+  /**
+   * @param repositoryHosts the hosts (with port, if any) of the repository,
+   *                        in the form returned by
+   *                        {@link ProxiedLinkedDataProvider#getHost(java.net.URL)}
+   * @param preferHeader the "Prefer" header value, or null to not add one
+   * @param acceptHeader the "Accept" header value, or null to leave the
+   *                     provider's "Accept" header unchanged
+   */
+  public FcrepoRequestInterceptor(final Collection<String> repositoryHosts, final String preferHeader,
+                                  final String acceptHeader) {
+    this.repositoryHosts = new HashSet<>(repositoryHosts);
+    this.preferHeader = preferHeader;
+    this.acceptHeader = acceptHeader;
+  }
+
+  @Override
+  public void process(final HttpRequest request, final HttpContext context) {
+    if (!"GET".equals(request.getRequestLine().getMethod())) {
+      return;
+    }
+    final HttpHost target = HttpClientContext.adapt(context).getTargetHost();
+    if (target == null || !repositoryHosts.contains(getHost(target))) {
+      return;
+    }
+    if (preferHeader != null) {
+      logger.trace("Adding Prefer: {} to {}", preferHeader, request.getRequestLine());
+      request.setHeader(PREFER, preferHeader);
+    }
+    if (acceptHeader != null) {
+      logger.trace("Setting Accept: {} on {}", acceptHeader, request.getRequestLine());
+      request.setHeader(ACCEPT, acceptHeader);
+    }
+  }
+
+  private static String getHost(final HttpHost target) {
+    return target.getPort() == -1 ? target.getHostName() : target.getHostName() + ":" + target.getPort();
+  }
+
+  /**
+   * Builds a "Prefer" header value for fcrepo.
+   *
+   * @param include space-separated preference URIs to include, or null
+   * @param omit space-separated preference URIs to omit, or null
+   * @return the header value, or null if there are no preferences
+   */
+  public static String buildPreferHeader(final String include, final String omit) {
+    final boolean hasInclude = include != null && !include.trim().isEmpty();
+    final boolean hasOmit = omit != null && !omit.trim().isEmpty();
+    if (!hasInclude && !hasOmit) {
+      return null;
+    }
+    final StringBuilder prefer = new StringBuilder("return=representation");
+    if (hasInclude) {
+      prefer.append("; include=\"").append(include.trim().replaceAll("\\s+", " ")).append('"');
+    }
+    if (hasOmit) {
+      prefer.append("; omit=\"").append(omit.trim().replaceAll("\\s+", " ")).append('"');
+    }
+    return prefer.toString();
+  }
+}
@@ -0,0 +1,70 @@
+package edu.umd.lib.ldpath;
+
+import org.apache.marmotta.ldcache.api.LDCachingBackend;
+import org.apache.marmotta.ldcache.model.CacheEntry;
+import org.openrdf.model.URI;
+
+/**
+ * LDCachingBackend that forwards all calls to another backend. Subclasses
+ * override the methods they need to add behavior to.
+ */
+public abstract class ForwardingCachingBackend implements LDCachingBackend {
+  protected final LDCachingBackend delegate;
+
+  protected ForwardingCachingBackend(final LDCachingBackend delegate) {
+    this.delegate = delegate;
+  }
+
+  public LDCachingBackend getDelegate() {
+    return delegate;
+  }
+
+  /**
+   * Returns the first backend of the given type in the chain of forwarding
+   * backends starting with the given backend.
+   *
+   * @param backend the first backend in the chain
+   * @param type the type of backend to find
+   * @param <T> the type of backend to find
+   * @return the backend, or null if there is none of that type
+   */
+  public static <T extends LDCachingBackend> T find(final LDCachingBackend backend, final Class<T> type) {
+    for (LDCachingBackend b = backend; b != null; ) {
+      if (type.isInstance(b)) {
+        return type.cast(b);
+      }
+      b = b instanceof ForwardingCachingBackend ? ((ForwardingCachingBackend) b).getDelegate() : null;
+    }
+    return null;
+  }
+
+  @Override
+  public CacheEntry getEntry(final URI resource) {
+    return delegate.getEntry(resource);
+  }
+
+  @Override
+  public void putEntry(final URI resource, final CacheEntry entry) {
+    delegate.putEntry(resource, entry);
+  }
+
+  @Override
+  public void removeEntry(final URI resource) {
+    delegate.removeEntry(resource);
+  }
+
+  @Override
+  public void clear() {
+    delegate.clear();
+  }
+
+  @Override
+  public void initialize() {
+    delegate.initialize();
+  }
+
+  @Override
+  public void shutdown() {
+    delegate.shutdown();
+  }
+}
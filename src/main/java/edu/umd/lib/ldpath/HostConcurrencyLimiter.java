@@ -0,0 +1,294 @@
+package edu.umd.lib.ldpath;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Limits the number of concurrent requests made to each host. Callers that
+ * would exceed the limit block until a request to that host completes, so
+ * that load on the host is bounded without requests failing.
+ * <p>
+ * In adaptive mode, the limit for each host is adjusted between the minimum
+ * and maximum concurrency using additive increase/multiplicative decrease
+ * (AIMD): each request that completes within the latency threshold raises
+ * the limit by 1/limit (about one per "window" of requests), and each
+ * request that is slower than the threshold, or fails in a way that
+ * indicates the host is overloaded, multiplies the limit by the backoff
+ * ratio. The limit is backed off at most once per window: only a request
+ * that was started after the last backoff can cause another one, so a burst
+ * of concurrent failures caused by the same overload cuts the limit once.
+ * <p>
+ * A caller with a {@link Deadline} (see {@link Deadline#current()}) waits no
+ * longer than the time left before it, and then gets a
+ * {@link DeadlineExceededException}, so that a saturated host cannot hold an
+ * exchange past its deadline.
+ */
+public class HostConcurrencyLimiter {
+  private static final Logger logger = LoggerFactory.getLogger(HostConcurrencyLimiter.class);
+
+  private final Map<String, HostLimit> limits = new ConcurrentHashMap<>();
+
+  private int maxConcurrency = 8;
+
+  private int minConcurrency = 1;
+
+  private boolean adaptive = false;
+
+  private long latencyThreshold = 2000;
+
+  private double backoffRatio = 0.5;
+
+  /**
+   * Waits until a request to the given host is allowed, and returns a permit
+   * that must be closed when the request completes.
+   *
+   * @param host the host name (and port, if any)
+   * @return the permit for the request
+   * @throws InterruptedException if interrupted while waiting
+   * @throws DeadlineExceededException if the current thread's deadline
+   *         passes while waiting
+   */
+  public Permit acquire(final String host) throws InterruptedException {
+    final HostLimit limit = limits.computeIfAbsent(host, h -> new HostLimit(h, maxConcurrency));
+    return new Permit(limit, limit.acquire());
+  }
+
+  /**
+   * Returns the current concurrency limit for the given host.
+   *
+   * @param host the host name (and port, if any)
+   * @return the concurrency limit
+   */
+  public int getLimit(final String host) {
+    final HostLimit limit = limits.get(host);
+    return limit == null ? maxConcurrency : limit.currentLimit();
+  }
+
+  /**
+   * Returns the number of requests to the given host currently in progress.
+   *
+   * @param host the host name (and port, if any)
+   * @return the number of requests in progress
+   */
+  public int getInFlight(final String host) {
+    final HostLimit limit = limits.get(host);
+    return limit == null ? 0 : limit.inFlight;
+  }
+
+  public int getMaxConcurrency() {
+    return maxConcurrency;
+  }
+
+  /**
+   * Sets the maximum number of concurrent requests to a single host.
+   *
+   * @param maxConcurrency the maximum concurrency
+   */
+  public void setMaxConcurrency(int maxConcurrency) {
+    if (maxConcurrency < 1) {
+      throw new IllegalArgumentException("maxConcurrency must be at least 1");
+    }
+    this.maxConcurrency = maxConcurrency;
+  }
+
+  public int getMinConcurrency() {
+    return minConcurrency;
+  }
+
+  /**
+   * Sets the lowest limit the adaptive mode can reduce a host's limit to.
+   *
+   * @param minConcurrency the minimum concurrency
+   */
+  public void setMinConcurrency(int minConcurrency) {
+    if (minConcurrency < 1) {
+      throw new IllegalArgumentException("minConcurrency must be at least 1");
+    }
+    this.minConcurrency = minConcurrency;
+  }
+
+  public boolean isAdaptive() {
+    return adaptive;
+  }
+
+  /**
+   * Sets whether to adjust the per-host limit based on request latency and
+   * failures. When false (the default), the limit is the max concurrency.
+   *
+   * @param adaptive true to adjust the limits
+   */
+  public void setAdaptive(boolean adaptive) {
+    this.adaptive = adaptive;
+  }
+
+  public long getLatencyThreshold() {
+    return latencyThreshold;
+  }
+
+  /**
+   * Sets the request latency (in milliseconds) above which the adaptive mode
+   * treats the host as overloaded. The latency is measured from acquiring
+   * the permit to the response being received (see
+   * {@link Permit#responded()}), so it does not include the time spent
+   * reading and parsing the response body.
+   *
+   * @param latencyThreshold the latency threshold
+   */
+  public void setLatencyThreshold(long latencyThreshold) {
+    this.latencyThreshold = latencyThreshold;
+  }
+
+  public double getBackoffRatio() {
+    return backoffRatio;
+  }
+
+  /**
+   * Sets the factor the adaptive mode multiplies a host's limit by when the
+   * host is overloaded.
+   *
+   * @param backoffRatio the backoff ratio, between 0 and 1
+   */
+  public void setBackoffRatio(double backoffRatio) {
+    if (backoffRatio <= 0 || backoffRatio >= 1) {
+      throw new IllegalArgumentException("backoffRatio must be between 0 and 1");
+    }
+    this.backoffRatio = backoffRatio;
+  }
+
+  /**
+   * Permission to make one request. Call {@link #responded()} when the
+   * response headers are received, if the body is processed before the
+   * permit is closed, and {@link #overloaded()} if the request failed because
+   * the host is overloaded (a 5xx response or a timeout), before closing the
+   * permit.
+   */
+  public class Permit implements AutoCloseable {
+    private final HostLimit limit;
+
+    private final long generation;
+
+    private final long start = System.nanoTime();
+
+    private long end = 0;
+
+    private boolean overloaded = false;
+
+    private boolean closed = false;
+
+    Permit(final HostLimit limit, final long generation) {
+      this.limit = limit;
+      this.generation = generation;
+    }
+
+    /**
+     * Marks the end of the request, for measuring its latency. If not
+     * called, the latency is measured up to closing the permit.
+     */
+    public void responded() {
+      if (end == 0) {
+        end = System.nanoTime();
+      }
+    }
+
+    public void overloaded() {
+      overloaded = true;
+    }
+
+    @Override
+    public void close() {
+      if (!closed) {
+        closed = true;
+        responded();
+        limit.release(generation, TimeUnit.NANOSECONDS.toMillis(end - start), overloaded);
+      }
+    }
+  }
+
+  private class HostLimit {
+    private final String host;
+
+    private final ReentrantLock lock = new ReentrantLock();
+
+    private final Condition available = lock.newCondition();
+
+    private double limit;
+
+    /**
+     * Incremented on each backoff, so that a request can tell whether the
+     * limit has been backed off since it started.
+     */
+    private long generation = 0;
+
+    private volatile int inFlight = 0;
+
+    HostLimit(final String host, final int limit) {
+      this.host = host;
+      this.limit = limit;
+    }
+
+    int currentLimit() {
+      lock.lock();
+      try {
+        return (int) limit;
+      } finally {
+        lock.unlock();
+      }
+    }
+
+    /**
+     * Waits for a request slot, and returns the current generation.
+     */
+    long acquire() throws InterruptedException {
+      final Deadline deadline = Deadline.current();
+      lock.lock();
+      try {
+        while (inFlight >= (int) limit) {
+          logger.trace("Waiting for request slot for {} ({} in flight)", host, inFlight);
+          if (deadline == null) {
+            available.await();
+          } else {
+            deadline.check("waiting for a request slot for " + host);
+            available.awaitNanos(TimeUnit.MILLISECONDS.toNanos(Math.max(1, deadline.remainingMillis())));
+          }
+        }
+        inFlight++;
+        return generation;
+      } finally {
+        lock.unlock();
+      }
+    }
+
+    void release(final long requestGeneration, final long latency, final boolean overloaded) {
+      lock.lock();
+      try {
+        inFlight--;
+        if (adaptive) {
+          final double previous = limit;
+          if (overloaded || latency > latencyThreshold) {
+            // requests started before the last backoff were already
+            // accounted for by it
+            if (requestGeneration == generation) {
+              limit = Math.max(minConcurrency, limit * backoffRatio);
+              generation++;
+            }
+          } else {
+            limit = Math.min(maxConcurrency, limit + 1.0 / limit);
+          }
+          if ((int) previous != (int) limit) {
+            logger.debug("Concurrency limit for {} changed from {} to {} (latency {} ms)",
+                host, (int) previous, (int) limit, latency);
+          }
+        }
+        available.signalAll();
+      } finally {
+        lock.unlock();
+      }
+    }
+  }
+}
@@ -0,0 +1,36 @@
+package edu.umd.lib.ldpath;
+
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpResponseInterceptor;
+import org.apache.http.protocol.HttpContext;
+
+/**
+ * HttpClient response interceptor that records the status code of the last
+ * response received on the current thread.
+ * <p>
+ * The linked data providers only report failures as exceptions, so this is
+ * used to find out which HTTP status caused a failed retrieval.
+ */
+public class HttpStatusRecorder implements HttpResponseInterceptor {
+  private static final ThreadLocal<Integer> lastStatus = new ThreadLocal<>();
+
+  @Override
+  public void process(final HttpResponse response, final HttpContext context) {
+    lastStatus.set(response.getStatusLine().getStatusCode());
+  }
+
+  /**
+   * Returns the status code of the last response received on the current
+   * thread since the last call to {@link #reset()}, or 0 if there is none.
+   *
+   * @return the HTTP status code, or 0
+   */
+  public static int getLastStatus() {
+    final Integer status = lastStatus.get();
+    return status == null ? 0 : status;
+  }
+
+  public static void reset() {
+    lastStatus.remove();
+  }
+}
@@ -0,0 +1,44 @@
+package edu.umd.lib.ldpath;
+
+import org.apache.marmotta.ldcache.api.LDCachingBackend;
+import org.apache.marmotta.ldcache.model.CacheEntry;
+import org.openrdf.model.Model;
+import org.openrdf.model.Statement;
+import org.openrdf.model.URI;
+import org.openrdf.model.impl.LinkedHashModel;
+
+/**
+ * LDCachingBackend that replaces the values of the triples in each entry
+ * with canonical instances from a {@link ValueInterner} before storing it,
+ * so that values shared between entries are only held in memory once.
+ * <p>
+ * This only reduces memory use for delegate backends that hold entries as
+ * objects, such as the default (in-memory) Infinispan backend.
+ */
+public class InterningCachingBackend extends ForwardingCachingBackend {
+  private final ValueInterner interner;
+
+  public InterningCachingBackend(final LDCachingBackend delegate, final ValueInterner interner) {
+    super(delegate);
+    this.interner = interner;
+  }
+
+  @Override
+  public void putEntry(final URI resource, final CacheEntry entry) {
+    final Model triples = entry.getTriples();
+    if (triples != null) {
+      // a hash model sized to the entry, rather than a sorted one
+      final Model interned = new LinkedHashModel(triples.size());
+      for (final Statement statement : triples) {
+        interned.add(interner.intern(statement));
+      }
+      entry.setTriples(interned);
+    }
+    entry.setResource(interner.intern(entry.getResource()));
+    super.putEntry(interner.intern(resource), entry);
+  }
+
+  public ValueInterner getInterner() {
+    return interner;
+  }
+}
@@ -0,0 +1,308 @@
+package edu.umd.lib.ldpath;
+
+import org.apache.marmotta.ldpath.api.backend.RDFBackend;
+import org.apache.marmotta.ldpath.model.fields.FieldMapping;
+import org.openrdf.model.Value;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Records how long each field of an LDPath program takes to evaluate, how
+ * many distinct nodes the field's path visits, and how many linked resources
+ * have to be fetched to evaluate it, aggregated over all the programs
+ * profiled.
+ * <p>
+ * Node visits are recorded by a {@link ProfilingLDCacheBackend}, and fetches
+ * by the {@link ProxiedLinkedDataProvider}, for the field being evaluated on
+ * the current thread. Since fields are evaluated in turn, a resource is
+ * counted as a fetch for the first field that needs it; later fields find
+ * it in the LD cache.
+ * <p>
+ * The statistics are available as a report, which can be written to the log,
+ * or read through JMX once {@link #register()} has been called. Unless an
+ * object name is set, each profiler is registered under its own name
+ * ("profiler-1", "profiler-2", and so on), so that the profilers of several
+ * processors in the same JVM do not collide.
+ */
+public class LdpathProfiler implements LdpathProfilerMBean {
+  private static final Logger logger = LoggerFactory.getLogger(LdpathProfiler.class);
+
+  public static final String DEFAULT_OBJECT_NAME_PREFIX = "edu.umd.lib.ldpath:type=LdpathProfiler,name=profiler-";
+
+  private static final AtomicInteger instanceCount = new AtomicInteger();
+
+  private static final ThreadLocal<Counters> currentCounters = new ThreadLocal<>();
+
+  private final Map<String, FieldStatistics> statistics = new ConcurrentHashMap<>();
+
+  private final AtomicLong evaluationCount = new AtomicLong();
+
+  private String objectName = DEFAULT_OBJECT_NAME_PREFIX + instanceCount.incrementAndGet();
+
+  // the name this profiler is registered under, if it is
+  private ObjectName registeredName;
+
+  /**
+   * Evaluates a field of an LDPath program for the given context, recording
+   * the statistics for the field.
+   *
+   * @param field the field of the parsed LDPath program
+   * @param backend the backend to evaluate the field against
+   * @param context the resource to evaluate the field for
+   * @param <T> the type of the field values
+   * @return the values of the field
+   */
+  public <T> Collection<T> evaluate(final FieldMapping<T, Value> field, final RDFBackend<Value> backend,
+                                    final Value context) {
+    final Counters counters = startCounting();
+    final long start = System.nanoTime();
+    try {
+      return field.getValues(backend, context);
+    } finally {
+      stopCounting();
+      record(field.getFieldName(), System.nanoTime() - start, counters.getNodes(), counters.getFetches());
+    }
+  }
+
+  /**
+   * Starts counting the nodes visited and resources fetched on this thread.
+   *
+   * @return the counters
+   */
+  static Counters startCounting() {
+    final Counters counters = new Counters();
+    currentCounters.set(counters);
+    return counters;
+  }
+
+  static void stopCounting() {
+    currentCounters.remove();
+  }
+
+  /**
+   * Counts the evaluation of a whole program, once its fields have been
+   * evaluated.
+   */
+  public void evaluationCompleted() {
+    evaluationCount.incrementAndGet();
+  }
+
+  /**
+   * Adds a single evaluation of a field to its statistics.
+   *
+   * @param field the field name
+   * @param nanos the evaluation time, in nanoseconds
+   * @param nodes the number of distinct nodes visited
+   * @param fetches the number of linked resources fetched
+   */
+  void record(final String field, final long nanos, final long nodes, final long fetches) {
+    statistics.computeIfAbsent(field, f -> new FieldStatistics()).add(nanos, nodes, fetches);
+  }
+
+  /**
+   * Records a node visited by the field being evaluated on this thread, if
+   * any. A node visited more than once is only counted once.
+   *
+   * @param node the node
+   */
+  static void nodeVisited(final Value node) {
+    final Counters counters = currentCounters.get();
+    if (counters != null) {
+      counters.nodes.add(node);
+    }
+  }
+
+  /**
+   * Counts a linked resource fetched for the field being evaluated on this
+   * thread, if any.
+   */
+  static void fetchTriggered() {
+    final Counters counters = currentCounters.get();
+    if (counters != null) {
+      counters.fetches++;
+    }
+  }
+
+  /**
+   * Returns the statistics for the given field, or null if it has not been
+   * evaluated.
+   *
+   * @param field the field name
+   * @return the field statistics
+   */
+  public FieldStatistics getStatistics(final String field) {
+    return statistics.get(field);
+  }
+
+  @Override
+  public long getEvaluationCount() {
+    return evaluationCount.get();
+  }
+
+  @Override
+  public String getReport() {
+    final List<Map.Entry<String, FieldStatistics>> entries = new ArrayList<>(statistics.entrySet());
+    entries.sort(Comparator.comparingLong(
+        (Map.Entry<String, FieldStatistics> e) -> e.getValue().getTotalNanos()).reversed());
+
+    final StringBuilder report = new StringBuilder();
+    report.append(String.format("LDPath profile of %d evaluations%n", evaluationCount.get()));
+    report.append(String.format("%-40s %8s %12s %10s %10s %12s %10s%n",
+        "field", "count", "total ms", "mean ms", "max ms", "nodes", "fetches"));
+    for (final Map.Entry<String, FieldStatistics> entry : entries) {
+      final FieldStatistics s = entry.getValue();
+      report.append(String.format("%-40s %8d %12.1f %10.2f %10.1f %12d %10d%n",
+          entry.getKey(), s.getCount(), toMillis(s.getTotalNanos()), toMillis(s.getMeanNanos()),
+          toMillis(s.getMaxNanos()), s.getNodes(), s.getFetches()));
+    }
+    return report.toString();
+  }
+
+  @Override
+  public void logReport() {
+    logger.info("{}", getReport());
+  }
+
+  @Override
+  public void reset() {
+    statistics.clear();
+    evaluationCount.set(0);
+  }
+
+  /**
+   * Registers this profiler with the platform MBean server, unless it is
+   * already registered.
+   *
+   * @throws JMException if the profiler cannot be registered, including when
+   *         another MBean is already registered under its object name
+   */
+  public synchronized void register() throws JMException {
+    if (registeredName != null) {
+      return;
+    }
+    final ObjectName name = new ObjectName(objectName);
+    ManagementFactory.getPlatformMBeanServer().registerMBean(this, name);
+    registeredName = name;
+    logger.info("Registered LDPath profiler as {}", name);
+  }
+
+  /**
+   * Unregisters this profiler from the platform MBean server, if it was
+   * registered by {@link #register()}. An MBean registered under the same
+   * name by anything else is left alone.
+   *
+   * @throws JMException if the profiler cannot be unregistered
+   */
+  public synchronized void unregister() throws JMException {
+    if (registeredName == null) {
+      return;
+    }
+    final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+    try {
+      server.unregisterMBean(registeredName);
+    } finally {
+      registeredName = null;
+    }
+  }
+
+  public String getObjectName() {
+    return objectName;
+  }
+
+  /**
+   * Sets the JMX object name the profiler is registered as.
+   *
+   * @param objectName the object name
+   */
+  public void setObjectName(String objectName) {
+    this.objectName = objectName;
+  }
+
+  private static double toMillis(final long nanos) {
+    return nanos / (double) TimeUnit.MILLISECONDS.toNanos(1);
+  }
+
+  static class Counters {
+    private final Set<Value> nodes = new HashSet<>();
+
+    private long fetches = 0;
+
+    long getNodes() {
+      return nodes.size();
+    }
+
+    long getFetches() {
+      return fetches;
+    }
+  }
+
+  /**
+   * Aggregated statistics for a single field.
+   */
+  public static class FieldStatistics {
+    private final LongAdder count = new LongAdder();
+
+    private final LongAdder totalNanos = new LongAdder();
+
+    private final LongAccumulator maxNanos = new LongAccumulator(Long::max, 0);
+
+    private final LongAdder nodes = new LongAdder();
+
+    private final LongAdder fetches = new LongAdder();
+
+    void add(final long nanos, final long nodes, final long fetches) {
+      this.count.increment();
+      this.totalNanos.add(nanos);
+      this.maxNanos.accumulate(nanos);
+      this.nodes.add(nodes);
+      this.fetches.add(fetches);
+    }
+
+    public long getCount() {
+      return count.sum();
+    }
+
+    public long getTotalNanos() {
+      return totalNanos.sum();
+    }
+
+    public long getMeanNanos() {
+      final long n = count.sum();
+      return n == 0 ? 0 : totalNanos.sum() / n;
+    }
+
+    public long getMaxNanos() {
+      return maxNanos.get();
+    }
+
+    /**
+     * @return the number of distinct nodes visited, summed over the
+     *         evaluations of the field
+     */
+    public long getNodes() {
+      return nodes.sum();
+    }
+
+    public long getFetches() {
+      return fetches.sum();
+    }
+  }
+}
@@ -0,0 +1,26 @@
+package edu.umd.lib.ldpath;
+
+/**
+ * JMX management interface for {@link LdpathProfiler}.
+ */
+public interface LdpathProfilerMBean {
+  /**
+   * @return the number of LDPath programs profiled since the last reset
+   */
+  long getEvaluationCount();
+
+  /**
+   * @return the per-field statistics, as a table sorted by total time
+   */
+  String getReport();
+
+  /**
+   * Writes the report to the log.
+   */
+  void logReport();
+
+  /**
+   * Discards all statistics.
+   */
+  void reset();
+}
@@ -0,0 +1,40 @@
+package edu.umd.lib.ldpath;
+
+import org.apache.marmotta.ldcache.api.LDCachingBackend;
+import org.apache.marmotta.ldcache.model.CacheEntry;
+import org.openrdf.model.URI;
+
+/**
+ * LDCachingBackend that discards the {@link PathMemo} values read from a
+ * cache entry whenever the entry is replaced or removed.
+ */
+public class MemoInvalidatingCachingBackend extends ForwardingCachingBackend {
+  private final PathMemo memo;
+
+  public MemoInvalidatingCachingBackend(final LDCachingBackend delegate, final PathMemo memo) {
+    super(delegate);
+    this.memo = memo;
+  }
+
+  @Override
+  public void putEntry(final URI resource, final CacheEntry entry) {
+    super.putEntry(resource, entry);
+    memo.invalidate(resource.stringValue());
+  }
+
+  @Override
+  public void removeEntry(final URI resource) {
+    super.removeEntry(resource);
+    memo.invalidate(resource.stringValue());
+  }
+
+  @Override
+  public void clear() {
+    super.clear();
+    memo.clear();
+  }
+
+  public PathMemo getMemo() {
+    return memo;
+  }
+}
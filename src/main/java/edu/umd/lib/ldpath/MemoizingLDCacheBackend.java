@@ -0,0 +1,83 @@
+package edu.umd.lib.ldpath;
+
+import org.apache.marmotta.ldcache.api.LDCachingBackend;
+import org.apache.marmotta.ldcache.model.CacheEntry;
+import org.apache.marmotta.ldcache.services.LDCache;
+import org.apache.marmotta.ldpath.backend.linkeddata.LDCacheBackend;
+import org.openrdf.model.URI;
+import org.openrdf.model.Value;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+
+/**
+ * LDCacheBackend that records the LD cache entries read by each step, for
+ * the sub-path being evaluated for a {@link PathMemo} (see
+ * {@link MemoizingSelector}), so that memoized values are tied to the
+ * entries they were read from. While recording, the objects are read from
+ * the same entry that is recorded, rather than looking the entry up again
+ * after LDCache has read it.
+ * <p>
+ * Each forward step is also reported to the {@link DependencyRecorder}, so
+ * that the nodes a document was built from are known.
+ */
+public class MemoizingLDCacheBackend extends LDCacheBackend {
+  private final LDCache ldcache;
+
+  private final LDCachingBackend cachingBackend;
+
+  private final PathMemo memo;
+
+  /**
+   * @param ldcache the LD cache
+   * @param cachingBackend the backend of the LD cache, to read the entries
+   *                       of memoized sub-paths from
+   * @param memo the memo, or null to not memoize
+   */
+  public MemoizingLDCacheBackend(final LDCache ldcache, final LDCachingBackend cachingBackend,
+                                 final PathMemo memo) {
+    super(ldcache);
+    this.ldcache = ldcache;
+    this.cachingBackend = cachingBackend;
+    this.memo = memo;
+  }
+
+  public PathMemo getMemo() {
+    return memo;
+  }
+
+  @Override
+  public Collection<Value> listObjects(final Value subject, final Value property) {
+    DependencyRecorder.resourceRead(subject);
+    if (memo == null || !PathMemo.isRecording()) {
+      return super.listObjects(subject, property);
+    }
+    if (!(subject instanceof URI)) {
+      // the triples of a blank node may come from any entry
+      PathMemo.untrackedRead();
+      return super.listObjects(subject, property);
+    }
+    if (!(property instanceof URI)) {
+      return super.listObjects(subject, property);
+    }
+    final URI resource = (URI) subject;
+    memo.beforeRead(resource.stringValue());
+    // retrieve the resource if it is not cached (or has expired), then read
+    // the objects from the entry that is recorded
+    ldcache.refresh(resource);
+    final CacheEntry entry = cachingBackend.getEntry(resource);
+    PathMemo.afterRead(entry);
+    if (entry == null || entry.getTriples() == null) {
+      return Collections.emptyList();
+    }
+    return new ArrayList<>(entry.getTriples().filter(resource, (URI) property, null).objects());
+  }
+
+  @Override
+  public Collection<Value> listSubjects(final Value property, final Value object) {
+    // reverse steps depend on every cached entry
+    PathMemo.untrackedRead();
+    return super.listSubjects(property, object);
+  }
+}
@@ -0,0 +1,228 @@
+package edu.umd.lib.ldpath;
+
+import org.apache.marmotta.ldpath.api.backend.NodeBackend;
+import org.apache.marmotta.ldpath.api.backend.RDFBackend;
+import org.apache.marmotta.ldpath.api.selectors.NodeSelector;
+import org.apache.marmotta.ldpath.model.fields.FieldMapping;
+import org.apache.marmotta.ldpath.model.programs.Program;
+import org.apache.marmotta.ldpath.parser.DefaultConfiguration;
+import org.apache.marmotta.ldpath.parser.LdPathParser;
+import org.apache.marmotta.ldpath.parser.ParseException;
+import org.apache.marmotta.ldpath.parser.TokenMgrError;
+import org.openrdf.model.URI;
+import org.openrdf.model.Value;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * NodeSelector for a path "a / b / c" that looks up the values of the rest
+ * of the path ("b / c", then "c") from each node in a {@link PathMemo}
+ * before evaluating it, keyed by the node and the rest's path expression.
+ * <p>
+ * A document linking to a node that other documents already linked to then
+ * gets the values of the rest of the path in one lookup.
+ * <p>
+ * LDPath's selectors do not expose their parts, so {@link #memoize} builds
+ * these selectors from the path expression of each field of a parsed
+ * program: the expression is split into its top-level steps, and each step
+ * is parsed again on its own. Paths nested in other selectors (such as the
+ * members of a union) are not memoized.
+ */
+public class MemoizingSelector implements NodeSelector<Value> {
+  private static final Logger logger = LoggerFactory.getLogger(MemoizingSelector.class);
+
+  private final NodeSelector<Value> first;
+
+  private final NodeSelector<Value> rest;
+
+  private final String restExpression;
+
+  private final PathMemo memo;
+
+  private final NodeSelector<Value> original;
+
+  /**
+   * @param first the selector for the first step of the path
+   * @param rest the selector for the rest of the path
+   * @param restExpression the path expression of the rest of the path, used
+   *                       as the memo key
+   * @param memo the memo
+   * @param original the selector for the whole path, used when the path to
+   *                 each result is wanted, and for its name and expression
+   */
+  public MemoizingSelector(final NodeSelector<Value> first, final NodeSelector<Value> rest,
+                           final String restExpression, final PathMemo memo, final NodeSelector<Value> original) {
+    this.first = first;
+    this.rest = rest;
+    this.restExpression = restExpression;
+    this.memo = memo;
+    this.original = original;
+  }
+
+  @Override
+  public Collection<Value> select(final RDFBackend<Value> backend, final Value context, final List<Value> path,
+                                  final Map<Value, List<Value>> resultPaths) {
+    if (path != null || resultPaths != null) {
+      // only plain selection is memoized
+      return original.select(backend, context, path, resultPaths);
+    }
+    final Set<Value> values = new HashSet<>();
+    for (final Value node : first.select(backend, context, null, null)) {
+      values.addAll(selectRest(backend, node));
+    }
+    return values;
+  }
+
+  private Collection<Value> selectRest(final RDFBackend<Value> backend, final Value node) {
+    if (!(node instanceof URI)) {
+      return rest.select(backend, node, null, null);
+    }
+    final Collection<Value> memoized = memo.get(node, restExpression);
+    if (memoized != null) {
+      return memoized;
+    }
+    final PathMemo.Frame frame = memo.start();
+    Collection<Value> values = null;
+    try {
+      values = rest.select(backend, node, null, null);
+      return values;
+    } finally {
+      memo.end(frame, node, restExpression, values);
+    }
+  }
+
+  @Override
+  public String getPathExpression(final NodeBackend<Value> backend) {
+    return original.getPathExpression(backend);
+  }
+
+  @Override
+  public String getName(final NodeBackend<Value> backend) {
+    return original.getName(backend);
+  }
+
+  /**
+   * Returns the fields of the program, with the selector of each field whose
+   * path has more than one step replaced by a MemoizingSelector. A field
+   * whose steps cannot be parsed back to the same expression is left as it
+   * is.
+   *
+   * @param program the parsed program, which is not modified
+   * @param memo the memo
+   * @param backend the backend, for formatting and parsing path expressions
+   * @return the fields to evaluate
+   */
+  public static List<FieldMapping<?, Value>> memoize(final Program<Value> program, final PathMemo memo,
+                                                     final NodeBackend<Value> backend) {
+    final List<FieldMapping<?, Value>> fields = new ArrayList<>(program.getFields().size());
+    int memoized = 0;
+    for (final FieldMapping<?, Value> field : program.getFields()) {
+      final NodeSelector<Value> selector = memoize(field.getSelector(), memo, backend);
+      if (selector == field.getSelector()) {
+        fields.add(field);
+      } else {
+        fields.add(withSelector(field, selector));
+        memoized++;
+      }
+    }
+    logger.debug("Memoizing the paths of {} of {} fields", memoized, fields.size());
+    return fields;
+  }
+
+  private static NodeSelector<Value> memoize(final NodeSelector<Value> selector, final PathMemo memo,
+                                             final NodeBackend<Value> backend) {
+    final List<String> steps = splitPath(selector.getPathExpression(backend));
+    if (steps.size() < 2) {
+      return selector;
+    }
+    try {
+      // build the chain from the last step back to the first
+      String restExpression = steps.get(steps.size() - 1);
+      NodeSelector<Value> rest = parseSelector(restExpression, backend);
+      for (int i = steps.size() - 2; i >= 0; i--) {
+        final String expression = steps.get(i) + " / " + restExpression;
+        final NodeSelector<Value> original = i == 0 ? selector : parseSelector(expression, backend);
+        rest = new MemoizingSelector(parseSelector(steps.get(i), backend), rest, restExpression, memo, original);
+        restExpression = expression;
+      }
+      return rest;
+    } catch (ParseException | TokenMgrError | RuntimeException e) {
+      logger.debug("Not memoizing path {}: {}", selector.getPathExpression(backend), e.toString());
+      return selector;
+    }
+  }
+
+  /**
+   * Parses a path expression written by a selector, and checks that it
+   * parses back to the same expression.
+   */
+  private static NodeSelector<Value> parseSelector(final String expression, final NodeBackend<Value> backend)
+      throws ParseException {
+    final NodeSelector<Value> selector = new LdPathParser<>(backend, new DefaultConfiguration<Value>(),
+        new StringReader(expression)).parseSelector(Collections.<String, String>emptyMap());
+    if (!expression.equals(selector.getPathExpression(backend))) {
+      throw new ParseException("Path expression " + expression + " does not parse back to itself");
+    }
+    return selector;
+  }
+
+  private static <T> FieldMapping<T, Value> withSelector(final FieldMapping<T, Value> field,
+                                                         final NodeSelector<Value> selector) {
+    return new FieldMapping<>(field.getFieldName(), field.getFieldType(), selector, field.getTransformer(),
+        field.getFieldConfig());
+  }
+
+  /**
+   * Splits a path expression, as written by the parsed selectors, into its
+   * top-level steps: "/" separators inside brackets, URIs and string
+   * literals do not split it.
+   *
+   * @param expression the path expression
+   * @return the steps, which is just the expression if it is a single step
+   */
+  static List<String> splitPath(final String expression) {
+    final List<String> steps = new ArrayList<>();
+    int depth = 0;
+    int start = 0;
+    for (int i = 0; i < expression.length(); i++) {
+      final char c = expression.charAt(i);
+      if (c == '"' || c == '\'') {
+        i = skipString(expression, i);
+      } else if (c == '<') {
+        final int end = expression.indexOf('>', i);
+        i = end < 0 ? expression.length() : end;
+      } else if (c == '(' || c == '[' || c == '{') {
+        depth++;
+      } else if (c == ')' || c == ']' || c == '}') {
+        depth--;
+      } else if (c == '/' && depth == 0) {
+        steps.add(expression.substring(start, i).trim());
+        start = i + 1;
+      }
+    }
+    steps.add(expression.substring(start).trim());
+    return steps;
+  }
+
+  private static int skipString(final String expression, final int start) {
+    final char quote = expression.charAt(start);
+    for (int i = start + 1; i < expression.length(); i++) {
+      final char c = expression.charAt(i);
+      if (c == '\\') {
+        i++;
+      } else if (c == quote) {
+        return i;
+      }
+    }
+    return expression.length();
+  }
+}
@@ -0,0 +1,294 @@
+package edu.umd.lib.ldpath;
+
+import org.apache.marmotta.ldclient.exception.DataRetrievalException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.EnumMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Remembers linked data resources whose retrieval recently failed, so that
+ * further requests for them can fail immediately instead of waiting on the
+ * same HTTP error or timeout again.
+ * <p>
+ * Each failure is classified (see {@link FailureClass}), and is remembered
+ * for the time-to-live configured for its class. A time-to-live of 0
+ * disables negative caching for that class.
+ */
+public class NegativeCache {
+  private static final Logger logger = LoggerFactory.getLogger(NegativeCache.class);
+
+  /**
+   * Fallback for finding an HTTP status code in a DataRetrievalException
+   * message, when no status was recorded for the request
+   */
+  private static final Pattern STATUS_PATTERN = Pattern.compile("status[^0-9]*HTTP/\\S+\\s+([0-9]{3})");
+
+  public enum FailureClass {
+    /** HTTP 404 Not Found or 410 Gone */
+    NOT_FOUND,
+    /** Any other HTTP 4xx status */
+    CLIENT_ERROR,
+    /** HTTP 5xx status */
+    SERVER_ERROR,
+    /** Connect or read timeout */
+    TIMEOUT,
+    /** Any other I/O error, such as an unknown host or refused connection */
+    CONNECTION_ERROR,
+    /** Any other failure, such as unparseable RDF */
+    OTHER
+  }
+
+  private final Map<FailureClass, Long> ttlMillis = new EnumMap<>(FailureClass.class);
+
+  private final Map<String, Failure> failures = new ConcurrentHashMap<>();
+
+  private int maxEntries = 10000;
+
+  public NegativeCache() {
+    ttlMillis.put(FailureClass.NOT_FOUND, TimeUnit.MINUTES.toMillis(5));
+    ttlMillis.put(FailureClass.CLIENT_ERROR, TimeUnit.MINUTES.toMillis(5));
+    ttlMillis.put(FailureClass.SERVER_ERROR, TimeUnit.MINUTES.toMillis(1));
+    ttlMillis.put(FailureClass.TIMEOUT, TimeUnit.MINUTES.toMillis(1));
+    ttlMillis.put(FailureClass.CONNECTION_ERROR, TimeUnit.SECONDS.toMillis(30));
+    ttlMillis.put(FailureClass.OTHER, TimeUnit.MINUTES.toMillis(5));
+  }
+
+  /**
+   * Returns the class of the remembered failure for the given URI, or null
+   * if there is no unexpired failure for it.
+   *
+   * @param uri the resource URI
+   * @return the failure class, or null
+   */
+  public FailureClass getFailure(final String uri) {
+    final Failure failure = failures.get(uri);
+    if (failure == null) {
+      return null;
+    }
+    if (failure.isExpired(System.currentTimeMillis())) {
+      failures.remove(uri, failure);
+      return null;
+    }
+    return failure.failureClass;
+  }
+
+  /**
+   * Returns the time (in milliseconds since the epoch) at which the failure
+   * remembered for the given URI expires, or 0 if there is none.
+   *
+   * @param uri the resource URI
+   * @return the expiry time, or 0
+   */
+  public long getExpiryTime(final String uri) {
+    final Failure failure = failures.get(uri);
+    return failure == null ? 0 : failure.expires;
+  }
+
+  /**
+   * Remembers a failure of the given class for the given URI.
+   *
+   * @param uri the resource URI
+   * @param failureClass the class of the failure
+   */
+  public void recordFailure(final String uri, final FailureClass failureClass) {
+    final long ttl = ttlMillis.get(failureClass);
+    if (ttl <= 0) {
+      return;
+    }
+    if (failures.size() >= maxEntries) {
+      purgeExpired();
+      if (failures.size() >= maxEntries) {
+        logger.warn("Negative cache is full ({} entries); clearing it", failures.size());
+        failures.clear();
+      }
+    }
+    logger.debug("Remembering {} failure for {} for {} ms", failureClass, uri, ttl);
+    failures.put(uri, new Failure(failureClass, System.currentTimeMillis() + ttl));
+  }
+
+  /**
+   * Forgets any failure remembered for the given URI.
+   *
+   * @param uri the resource URI
+   */
+  public void remove(final String uri) {
+    failures.remove(uri);
+  }
+
+  public void clear() {
+    failures.clear();
+  }
+
+  public int size() {
+    return failures.size();
+  }
+
+  private void purgeExpired() {
+    final long now = System.currentTimeMillis();
+    final Iterator<Failure> iterator = failures.values().iterator();
+    while (iterator.hasNext()) {
+      if (iterator.next().isExpired(now)) {
+        iterator.remove();
+      }
+    }
+  }
+
+  /**
+   * Classifies a failed retrieval.
+   *
+   * @param e the exception thrown by the data provider
+   * @param httpStatus the HTTP status of the response, or 0 if unknown
+   * @return the failure class
+   */
+  public static FailureClass classify(final DataRetrievalException e, final int httpStatus) {
+    for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+      // includes SocketTimeoutException and HttpClient's ConnectTimeoutException
+      if (cause instanceof InterruptedIOException) {
+        return FailureClass.TIMEOUT;
+      }
+    }
+
+    int status = httpStatus;
+    if (status == 0 && e.getMessage() != null) {
+      final Matcher matcher = STATUS_PATTERN.matcher(e.getMessage());
+      if (matcher.find()) {
+        status = Integer.parseInt(matcher.group(1));
+      }
+    }
+    if (status == 404 || status == 410) {
+      return FailureClass.NOT_FOUND;
+    }
+    if (status >= 400 && status < 500) {
+      return FailureClass.CLIENT_ERROR;
+    }
+    if (status >= 500) {
+      return FailureClass.SERVER_ERROR;
+    }
+
+    for (Throwable cause = e.getCause(); cause != null; cause = cause.getCause()) {
+      if (cause instanceof IOException) {
+        return FailureClass.CONNECTION_ERROR;
+      }
+    }
+    return FailureClass.OTHER;
+  }
+
+  public long getNotFoundTtl() {
+    return getTtl(FailureClass.NOT_FOUND);
+  }
+
+  /**
+   * Sets how long (in seconds) to remember 404 and 410 responses.
+   *
+   * @param seconds the time-to-live, or 0 to not remember these failures
+   */
+  public void setNotFoundTtl(long seconds) {
+    setTtl(FailureClass.NOT_FOUND, seconds);
+  }
+
+  public long getClientErrorTtl() {
+    return getTtl(FailureClass.CLIENT_ERROR);
+  }
+
+  /**
+   * Sets how long (in seconds) to remember 4xx responses other than 404
+   * and 410.
+   *
+   * @param seconds the time-to-live, or 0 to not remember these failures
+   */
+  public void setClientErrorTtl(long seconds) {
+    setTtl(FailureClass.CLIENT_ERROR, seconds);
+  }
+
+  public long getServerErrorTtl() {
+    return getTtl(FailureClass.SERVER_ERROR);
+  }
+
+  /**
+   * Sets how long (in seconds) to remember 5xx responses.
+   *
+   * @param seconds the time-to-live, or 0 to not remember these failures
+   */
+  public void setServerErrorTtl(long seconds) {
+    setTtl(FailureClass.SERVER_ERROR, seconds);
+  }
+
+  public long getTimeoutTtl() {
+    return getTtl(FailureClass.TIMEOUT);
+  }
+
+  /**
+   * Sets how long (in seconds) to remember connect and read timeouts.
+   *
+   * @param seconds the time-to-live, or 0 to not remember these failures
+   */
+  public void setTimeoutTtl(long seconds) {
+    setTtl(FailureClass.TIMEOUT, seconds);
+  }
+
+  public long getConnectionErrorTtl() {
+    return getTtl(FailureClass.CONNECTION_ERROR);
+  }
+
+  /**
+   * Sets how long (in seconds) to remember I/O errors other than timeouts.
+   *
+   * @param seconds the time-to-live, or 0 to not remember these failures
+   */
+  public void setConnectionErrorTtl(long seconds) {
+    setTtl(FailureClass.CONNECTION_ERROR, seconds);
+  }
+
+  public long getOtherErrorTtl() {
+    return getTtl(FailureClass.OTHER);
+  }
+
+  /**
+   * Sets how long (in seconds) to remember any other failures.
+   *
+   * @param seconds the time-to-live, or 0 to not remember these failures
+   */
+  public void setOtherErrorTtl(long seconds) {
+    setTtl(FailureClass.OTHER, seconds);
+  }
+
+  public int getMaxEntries() {
+    return maxEntries;
+  }
+
+  public void setMaxEntries(int maxEntries) {
+    this.maxEntries = maxEntries;
+  }
+
+  private long getTtl(final FailureClass failureClass) {
+    return TimeUnit.MILLISECONDS.toSeconds(ttlMillis.get(failureClass));
+  }
+
+  private void setTtl(final FailureClass failureClass, final long seconds) {
+    ttlMillis.put(failureClass, TimeUnit.SECONDS.toMillis(seconds));
+  }
+
+  private static class Failure {
+    final FailureClass failureClass;
+
+    final long expires;
+
+    Failure(final FailureClass failureClass, final long expires) {
+      this.failureClass = failureClass;
+      this.expires = expires;
+    }
+
+    boolean isExpired(final long now) {
+      return now >= expires;
+    }
+  }
+}
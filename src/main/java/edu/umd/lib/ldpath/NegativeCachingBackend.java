@@ -0,0 +1,58 @@
+package edu.umd.lib.ldpath;
+
+import org.apache.marmotta.ldcache.api.LDCachingBackend;
+import org.apache.marmotta.ldcache.model.CacheEntry;
+import org.openrdf.model.URI;
+
+import java.util.Date;
+
+/**
+ * LDCachingBackend that limits how long the empty entries LDCache stores
+ * for failed retrievals are kept, using the time-to-live of the failure
+ * recorded in a {@link NegativeCache}.
+ * <p>
+ * Without this, a failed retrieval is cached for the LDCache default expiry
+ * time, regardless of whether the failure was a missing resource or a
+ * momentary timeout.
+ */
+public class NegativeCachingBackend extends ForwardingCachingBackend {
+  private NegativeCache negativeCache;
+
+  public NegativeCachingBackend(final LDCachingBackend delegate, final NegativeCache negativeCache) {
+    super(delegate);
+    this.negativeCache = negativeCache;
+  }
+
+  @Override
+  public void putEntry(final URI resource, final CacheEntry entry) {
+    final NegativeCache negativeCache = this.negativeCache;
+    if (negativeCache != null && isEmpty(entry) && negativeCache.getFailure(resource.stringValue()) != null) {
+      final long expiryTime = negativeCache.getExpiryTime(resource.stringValue());
+      if (entry.getExpiryDate() == null || entry.getExpiryDate().getTime() > expiryTime) {
+        entry.setExpiryDate(new Date(expiryTime));
+      }
+    }
+    super.putEntry(resource, entry);
+  }
+
+  @Override
+  public void removeEntry(final URI resource) {
+    final NegativeCache negativeCache = this.negativeCache;
+    if (negativeCache != null) {
+      negativeCache.remove(resource.stringValue());
+    }
+    super.removeEntry(resource);
+  }
+
+  public NegativeCache getNegativeCache() {
+    return negativeCache;
+  }
+
+  public void setNegativeCache(NegativeCache negativeCache) {
+    this.negativeCache = negativeCache;
+  }
+
+  private static boolean isEmpty(final CacheEntry entry) {
+    return entry.getTriples() == null || entry.getTriples().isEmpty();
+  }
+}
@@ -0,0 +1,460 @@
+package edu.umd.lib.ldpath;
+
+import org.apache.marmotta.ldcache.model.CacheEntry;
+import org.openrdf.model.Value;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Bounded memo of the values an LDPath sub-path expression reaches from a
+ * node (see {@link MemoizingSelector}), so that paths through nodes many
+ * documents link to, such as vocabulary terms, are evaluated once rather
+ * than for every document.
+ * <p>
+ * While a sub-path is evaluated, the LD cache entries it reads are recorded
+ * (see {@link MemoizingLDCacheBackend}). The values are only memoized if
+ * every entry read had triples, so that the empty entries of failed
+ * retrievals are not pinned in the memo, and they expire at the earliest
+ * expiry date of those entries, or after the time-to-live, if sooner. They
+ * are discarded as soon as any of those entries is replaced or removed (see
+ * {@link MemoInvalidatingCachingBackend}).
+ * <p>
+ * The memo is split into segments with their own locks and least recently
+ * used eviction, so that concurrent exchanges rarely wait for each other.
+ */
+public class PathMemo {
+  private static final int SEGMENTS = 16;
+
+  private static final int STAMPS = 1024;
+
+  private static final ThreadLocal<Deque<Frame>> frames = ThreadLocal.withInitial(ArrayDeque::new);
+
+  private final Segment[] segments = new Segment[SEGMENTS];
+
+  // the memo keys that read each cache entry, for invalidation
+  private final Map<String, Set<Key>> readers = new ConcurrentHashMap<>();
+
+  // invalidation counts, by hash of the resource URI, used to detect cache
+  // entries invalidated while a sub-path was being evaluated
+  private final AtomicLongArray stamps = new AtomicLongArray(STAMPS);
+
+  private final long ttl;
+
+  private final LongAdder hits = new LongAdder();
+
+  private final LongAdder misses = new LongAdder();
+
+  /**
+   * @param maxEntries the maximum number of (node, sub-path) entries
+   * @param ttl the maximum time-to-live of memoized values, in seconds
+   */
+  public PathMemo(final int maxEntries, final long ttl) {
+    this.ttl = TimeUnit.SECONDS.toNanos(ttl);
+    final int segmentSize = Math.max(1, (maxEntries + SEGMENTS - 1) / SEGMENTS);
+    for (int i = 0; i < SEGMENTS; i++) {
+      segments[i] = new Segment(segmentSize);
+    }
+  }
+
+  /**
+   * Returns the memoized values of the sub-path for the node, or null if
+   * there are none, or they have expired. On a hit, the cache entries the
+   * values were read from are recorded in the sub-path being evaluated on
+   * the current thread (if any), and reported to the
+   * {@link DependencyRecorder}.
+   *
+   * @param node the start node
+   * @param expression the sub-path expression
+   * @return a copy of the memoized values, or null
+   */
+  public Collection<Value> get(final Value node, final String expression) {
+    final Key key = new Key(node, expression);
+    final Memo memo = segmentFor(key).get(key);
+    if (memo == null || System.nanoTime() - memo.expiresAt >= 0) {
+      misses.increment();
+      return null;
+    }
+    hits.increment();
+    final Frame frame = frames.get().peek();
+    for (final String resource : memo.reads) {
+      DependencyRecorder.resourceRead(resource);
+      if (frame != null) {
+        frame.read(resource, stamp(resource));
+      }
+    }
+    if (frame != null) {
+      frame.expiresBy(memo.expiresAt);
+    }
+    return new ArrayList<>(memo.values);
+  }
+
+  /**
+   * Starts recording the cache entries read on the current thread, for
+   * evaluating a sub-path. Must be followed by {@link #end}.
+   *
+   * @return the recording
+   */
+  public Frame start() {
+    final Frame frame = new Frame();
+    frames.get().push(frame);
+    return frame;
+  }
+
+  /**
+   * Stops the recording, and memoizes the values, if they can be.
+   * Whatever was read also counts as read by the enclosing sub-path, if
+   * any.
+   *
+   * @param frame the recording, from {@link #start()}
+   * @param node the start node
+   * @param expression the sub-path expression
+   * @param values the values of the sub-path, or null if it failed
+   */
+  public void end(final Frame frame, final Value node, final String expression, final Collection<Value> values) {
+    final Deque<Frame> stack = frames.get();
+    stack.pop();
+    final Frame parent = stack.peek();
+    if (parent != null) {
+      parent.merge(frame);
+    }
+    if (stack.isEmpty()) {
+      frames.remove();
+    }
+    if (values != null && frame.memoizable) {
+      put(new Key(node, expression), values, frame);
+    }
+  }
+
+  private void put(final Key key, final Collection<Value> values, final Frame frame) {
+    final long expiresAt = frame.expiresAt - (System.nanoTime() + ttl) < 0 ? frame.expiresAt : System.nanoTime() + ttl;
+    final Memo memo = new Memo(Collections.unmodifiableList(new ArrayList<>(values)),
+        frame.reads.keySet().toArray(new String[0]), expiresAt);
+    // register the key before checking the stamps, and check them again
+    // after adding the memo: a concurrent invalidation either finds the key,
+    // or changes a stamp this sees
+    for (final String resource : memo.reads) {
+      readers.computeIfAbsent(resource, r -> ConcurrentHashMap.newKeySet()).add(key);
+    }
+    if (!isCurrent(frame)) {
+      unregister(key, memo);
+      return;
+    }
+    final Segment segment = segmentFor(key);
+    final Memo replaced = segment.put(key, memo);
+    if (replaced != null) {
+      unregister(key, replaced, memo);
+    }
+    if (!isCurrent(frame) && segment.remove(key, memo)) {
+      unregister(key, memo);
+    }
+  }
+
+  /**
+   * Returns true if none of the cache entries read by the frame has been
+   * invalidated since it was read.
+   */
+  private boolean isCurrent(final Frame frame) {
+    for (final Map.Entry<String, Long> read : frame.reads.entrySet()) {
+      if (stamp(read.getKey()) != read.getValue()) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Records that the cache entry of the given resource is about to be read,
+   * in the sub-path being evaluated on the current thread (if any).
+   *
+   * @param resource the URI of the cached resource
+   */
+  public void beforeRead(final String resource) {
+    final Frame frame = frames.get().peek();
+    if (frame != null) {
+      frame.read(resource, stamp(resource));
+    }
+  }
+
+  /**
+   * Records the cache entry that was read after {@link #beforeRead}, so
+   * that the sub-path being evaluated on the current thread (if any) is not
+   * memoized past the entry's expiry, or at all if the entry is missing or
+   * empty.
+   *
+   * @param entry the cache entry, or null if there is none
+   */
+  public static void afterRead(final CacheEntry entry) {
+    final Frame frame = frames.get().peek();
+    if (frame == null) {
+      return;
+    }
+    if (entry == null || entry.getTriples() == null || entry.getTriples().isEmpty()
+        || entry.getExpiryDate() == null) {
+      frame.memoizable = false;
+      return;
+    }
+    final long remainingMillis = entry.getExpiryDate().getTime() - System.currentTimeMillis();
+    frame.expiresBy(System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(remainingMillis));
+  }
+
+  /**
+   * Records that the sub-path being evaluated on the current thread (if
+   * any) read something that cannot be tracked to single cache entries,
+   * such as the subjects of a reverse step, so that it is not memoized.
+   */
+  public static void untrackedRead() {
+    final Frame frame = frames.get().peek();
+    if (frame != null) {
+      frame.memoizable = false;
+    }
+  }
+
+  /**
+   * Returns true if a sub-path is being evaluated for the memo on the
+   * current thread.
+   *
+   * @return true if recording reads
+   */
+  public static boolean isRecording() {
+    return !frames.get().isEmpty();
+  }
+
+  /**
+   * Discards the memoized values that were read from the cache entry of
+   * the given resource.
+   *
+   * @param resource the URI of the cached resource
+   */
+  public void invalidate(final String resource) {
+    stamps.incrementAndGet(stampIndex(resource));
+    final Set<Key> keys = readers.remove(resource);
+    if (keys != null) {
+      for (final Key key : keys) {
+        final Memo memo = segmentFor(key).remove(key);
+        if (memo != null) {
+          unregister(key, memo);
+        }
+      }
+    }
+  }
+
+  public void clear() {
+    for (int i = 0; i < STAMPS; i++) {
+      stamps.incrementAndGet(i);
+    }
+    for (final Segment segment : segments) {
+      segment.clear();
+    }
+    readers.clear();
+  }
+
+  public int size() {
+    int size = 0;
+    for (final Segment segment : segments) {
+      size += segment.size();
+    }
+    return size;
+  }
+
+  public long getHits() {
+    return hits.sum();
+  }
+
+  public long getMisses() {
+    return misses.sum();
+  }
+
+  private long stamp(final String resource) {
+    return stamps.get(stampIndex(resource));
+  }
+
+  private static int stampIndex(final String resource) {
+    return (resource.hashCode() & Integer.MAX_VALUE) % STAMPS;
+  }
+
+  private Segment segmentFor(final Key key) {
+    return segments[(key.hashCode() & Integer.MAX_VALUE) % SEGMENTS];
+  }
+
+  private void unregister(final Key key, final Memo memo) {
+    unregister(key, memo, null);
+  }
+
+  /**
+   * Removes the key from the readers of the entries the memo was read from,
+   * other than those the replacing memo (if any) was also read from.
+   */
+  private void unregister(final Key key, final Memo memo, final Memo replacement) {
+    final List<String> kept = replacement == null ? Collections.emptyList() : Arrays.asList(replacement.reads);
+    for (final String resource : memo.reads) {
+      if (!kept.contains(resource)) {
+        readers.computeIfPresent(resource, (r, keys) -> keys.remove(key) && keys.isEmpty() ? null : keys);
+      }
+    }
+  }
+
+  /**
+   * The cache entries read while evaluating a sub-path, with the invalidation
+   * stamp of each when it was read.
+   */
+  public static final class Frame {
+    private final Map<String, Long> reads = new LinkedHashMap<>();
+
+    private long expiresAt = System.nanoTime() + TimeUnit.DAYS.toNanos(365);
+
+    private boolean memoizable = true;
+
+    private Frame() {
+    }
+
+    private void read(final String resource, final long stamp) {
+      reads.putIfAbsent(resource, stamp);
+    }
+
+    private void expiresBy(final long time) {
+      if (time - expiresAt < 0) {
+        expiresAt = time;
+      }
+    }
+
+    private void merge(final Frame other) {
+      for (final Map.Entry<String, Long> read : other.reads.entrySet()) {
+        reads.putIfAbsent(read.getKey(), read.getValue());
+      }
+      expiresBy(other.expiresAt);
+      memoizable &= other.memoizable;
+    }
+  }
+
+  private final class Segment {
+    private final ReentrantLock lock = new ReentrantLock();
+
+    private final LinkedHashMap<Key, Memo> entries;
+
+    Segment(final int maxSize) {
+      entries = new LinkedHashMap<Key, Memo>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(final Map.Entry<Key, Memo> eldest) {
+          if (size() > maxSize) {
+            unregister(eldest.getKey(), eldest.getValue());
+            return true;
+          }
+          return false;
+        }
+      };
+    }
+
+    Memo get(final Key key) {
+      lock.lock();
+      try {
+        return entries.get(key);
+      } finally {
+        lock.unlock();
+      }
+    }
+
+    Memo put(final Key key, final Memo memo) {
+      lock.lock();
+      try {
+        return entries.put(key, memo);
+      } finally {
+        lock.unlock();
+      }
+    }
+
+    Memo remove(final Key key) {
+      lock.lock();
+      try {
+        return entries.remove(key);
+      } finally {
+        lock.unlock();
+      }
+    }
+
+    boolean remove(final Key key, final Memo memo) {
+      lock.lock();
+      try {
+        return entries.remove(key, memo);
+      } finally {
+        lock.unlock();
+      }
+    }
+
+    void clear() {
+      lock.lock();
+      try {
+        entries.clear();
+      } finally {
+        lock.unlock();
+      }
+    }
+
+    int size() {
+      lock.lock();
+      try {
+        return entries.size();
+      } finally {
+        lock.unlock();
+      }
+    }
+  }
+
+  private static final class Key {
+    private final Value node;
+
+    private final String expression;
+
+    private final int hash;
+
+    Key(final Value node, final String expression) {
+      this.node = node;
+      this.expression = expression;
+      this.hash = 31 * node.hashCode() + expression.hashCode();
+    }
+
+    @Override
+    public boolean equals(final Object o) {
+      if (this == o) {
+        return true;
+      }
+      if (!(o instanceof Key)) {
+        return false;
+      }
+      final Key other = (Key) o;
+      return node.equals(other.node) && expression.equals(other.expression);
+    }
+
+    @Override
+    public int hashCode() {
+      return hash;
+    }
+  }
+
+  private static final class Memo {
+    final List<Value> values;
+
+    final String[] reads;
+
+    final long expiresAt;
+
+    Memo(final List<Value> values, final String[] reads, final long expiresAt) {
+      this.values = values;
+      this.reads = reads;
+      this.expiresAt = expiresAt;
+    }
+  }
+}
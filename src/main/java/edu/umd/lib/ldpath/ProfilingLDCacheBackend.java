@@ -0,0 +1,37 @@
+package edu.umd.lib.ldpath;
+
+import org.apache.marmotta.ldcache.api.LDCachingBackend;
+import org.apache.marmotta.ldcache.services.LDCache;
+import org.openrdf.model.Value;
+
+import java.util.Collection;
+
+/**
+ * LDCacheBackend that records the nodes visited by LDPath path expressions
+ * (the subjects of forward steps and the objects of reverse steps),
+ * for the field being profiled by an {@link LdpathProfiler}. Sub-paths
+ * answered from the path memo (if any) visit no nodes.
+ */
+public class ProfilingLDCacheBackend extends MemoizingLDCacheBackend {
+  /**
+   * @param ldcache the LD cache
+   * @param cachingBackend the backend of the LD cache
+   * @param memo the path memo, or null to not memoize
+   */
+  public ProfilingLDCacheBackend(final LDCache ldcache, final LDCachingBackend cachingBackend,
+                                 final PathMemo memo) {
+    super(ldcache, cachingBackend, memo);
+  }
+
+  @Override
+  public Collection<Value> listObjects(final Value subject, final Value property) {
+    LdpathProfiler.nodeVisited(subject);
+    return super.listObjects(subject, property);
+  }
+
+  @Override
+  public Collection<Value> listSubjects(final Value property, final Value object) {
+    LdpathProfiler.nodeVisited(object);
+    return super.listSubjects(property, object);
+  }
+}
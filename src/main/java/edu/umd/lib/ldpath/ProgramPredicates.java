@@ -0,0 +1,111 @@
+package edu.umd.lib.ldpath;
+
+import org.apache.marmotta.ldpath.LDPath;
+import org.apache.marmotta.ldpath.backend.linkeddata.LDCacheBackend;
+import org.apache.marmotta.ldpath.exception.LDPathParseException;
+import org.apache.marmotta.ldpath.model.fields.FieldMapping;
+import org.apache.marmotta.ldpath.model.programs.Program;
+import org.openrdf.model.URI;
+import org.openrdf.model.Value;
+import org.openrdf.model.impl.URIImpl;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.StringReader;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * Determines the set of predicates an LDPath program can read.
+ * <p>
+ * The program is parsed by the LDPath parser, and the set is made up of
+ * every URI the parser resolves while building the program's selectors
+ * (with prefixes expanded by the parser itself), so it may include URIs
+ * that are not actually used as predicates (such as the objects of "is"
+ * tests), but it will not leave out any predicate the program uses. If a
+ * field of the parsed program has a wildcard step, or the program cannot be
+ * parsed, the set of predicates cannot be bounded, and null is returned.
+ */
+public final class ProgramPredicates {
+  private static final Logger logger = LoggerFactory.getLogger(ProgramPredicates.class);
+
+  private static final String RDF_TYPE = "http://www.w3.org/1999/02/22-rdf-syntax-ns#type";
+
+  private static final Pattern STRING = Pattern.compile("\"(?:[^\"\\\\]|\\\\.)*\"|'(?:[^'\\\\]|\\\\.)*'");
+
+  private static final Pattern URI = Pattern.compile("<[^>\\s]*>");
+
+  private ProgramPredicates() {}
+
+  /**
+   * Returns the URIs of the predicates the given LDPath program can read, or
+   * null if they cannot be determined.
+   *
+   * @param program the LDPath program
+   * @return the predicate URIs, or null
+   */
+  public static Set<String> fromProgram(final String program) {
+    if (program == null) {
+      return null;
+    }
+    final RecordingBackend backend = new RecordingBackend();
+    final Program<Value> parsed;
+    try {
+      parsed = new LDPath<>(backend).parseProgram(new StringReader(program));
+    } catch (LDPathParseException e) {
+      logger.debug("Unable to parse LDPath program; predicates are unbounded: {}", e.getMessage());
+      return null;
+    }
+
+    for (final FieldMapping<?, Value> field : parsed.getFields()) {
+      if (hasWildcard(field.getSelector().getPathExpression(backend))) {
+        logger.debug("Field {} of the LDPath program has a wildcard; predicates are unbounded", field.getFieldName());
+        return null;
+      }
+    }
+
+    final Set<String> predicates = new HashSet<>(backend.uris);
+    // "is-a" tests read rdf:type without naming it
+    predicates.add(RDF_TYPE);
+    return Collections.unmodifiableSet(predicates);
+  }
+
+  /**
+   * Returns true if the path expression (as written by the parsed
+   * selectors, with every URI in angle brackets) has a "*" that is a
+   * wildcard step, rather than the repetition of a preceding group, as in
+   * "(&lt;http://pcdm.org/models#memberOf&gt;)*".
+   */
+  static boolean hasWildcard(final String pathExpression) {
+    final String text = URI.matcher(STRING.matcher(pathExpression).replaceAll(" ")).replaceAll(" ");
+    for (int i = text.indexOf('*'); i >= 0; i = text.indexOf('*', i + 1)) {
+      int j = i - 1;
+      while (j >= 0 && Character.isWhitespace(text.charAt(j))) {
+        j--;
+      }
+      if (j < 0 || text.charAt(j) != ')') {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Backend for parsing only, which records the URIs the parser creates.
+   */
+  private static class RecordingBackend extends LDCacheBackend {
+    private final Set<String> uris = new HashSet<>();
+
+    RecordingBackend() {
+      super(null);
+    }
+
+    @Override
+    public URI createURI(final String uri) {
+      uris.add(uri);
+      return new URIImpl(uri);
+    }
+  }
+}
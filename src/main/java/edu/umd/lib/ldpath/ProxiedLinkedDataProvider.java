@@ -1,17 +1,32 @@
 package edu.umd.lib.ldpath;
 
 import org.apache.marmotta.ldclient.api.endpoint.Endpoint;
+import org.apache.marmotta.ldclient.api.ldclient.LDClientService;
+import org.apache.marmotta.ldclient.exception.DataRetrievalException;
+import org.apache.marmotta.ldclient.model.ClientResponse;
 import org.apache.marmotta.ldclient.provider.rdf.LinkedDataProvider;
 import org.jasig.cas.client.util.URIBuilder;
+import org.openrdf.model.Model;
+import org.openrdf.model.Statement;
+import org.openrdf.rio.RDFFormat;
+import org.openrdf.rio.RDFHandlerException;
+import org.openrdf.rio.RDFParseException;
+import org.openrdf.rio.RDFParser;
+import org.openrdf.rio.RDFParserRegistry;
+import org.openrdf.rio.Rio;
+import org.openrdf.rio.helpers.RDFHandlerBase;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.IOException;
+import java.io.InputStream;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 /**
  * LinkedDataProvider implementation that overrides the request URL, based on
@@ -22,18 +37,46 @@ import java.util.Map;
  * <p>
  * This class relies on the "REPO_INTERNAL_URL" and "REPO_EXTERNAL_URL" environment
  * variables to properly convert URLs.
+ * <p>
+ * If a {@link NegativeCache} is set, failed retrievals are recorded in it,
+ * and resources with a remembered failure are not requested again until the
+ * failure expires.
+ * <p>
+ * If a {@link HostConcurrencyLimiter} is set, retrievals wait for it to
+ * allow a request to the host the resource is requested from. The latency
+ * reported to it ends when the response is received, before it is parsed.
+ * <p>
+ * If the current thread has a {@link Deadline} that has passed, resources
+ * are not retrieved, and failures are not recorded in the negative cache;
+ * a {@link DeadlineExceededException} is thrown instead.
+ * <p>
+ * If a predicate filter is set, only triples whose predicate is in the
+ * filter are kept from each response, so that triples the LDPath program
+ * can never read do not take up space in the cache. The other triples are
+ * dropped as they are parsed, so a response is never held in full.
  */
 public class ProxiedLinkedDataProvider extends LinkedDataProvider {
   private static final Logger logger = LoggerFactory.getLogger(ProxiedLinkedDataProvider.class);
 
   public static final String PROVIDER_NAME = "Proxied Linked Data";
 
-  private static final Map<String, String> linkedDataMap = new HashMap<>();
+  // synchronized, as exchanges may be processed concurrently (null values
+  // are allowed, so this cannot be a ConcurrentHashMap)
+  private static final Map<String, String> linkedDataMap = Collections.synchronizedMap(new HashMap<>());
+
+  // the permit of the retrieval in progress on each thread, so that the
+  // end of the request can be marked when its response is parsed
+  private static final ThreadLocal<HostConcurrencyLimiter.Permit> currentPermit = new ThreadLocal<>();
 
   private static String repoInternalUrl;
 
   private static String repoExternalUrl;
 
+  private NegativeCache negativeCache;
+
+  private HostConcurrencyLimiter concurrencyLimiter;
+
+  private volatile Set<String> predicateFilter;
 
   public ProxiedLinkedDataProvider() {
     String repoInternalUrl = System.getenv("REPO_INTERNAL_URL");
@@ -56,6 +99,163 @@ public class ProxiedLinkedDataProvider extends LinkedDataProvider {
     return PROVIDER_NAME;
   }
 
+  @Override
+  public ClientResponse retrieveResource(final String resource, final LDClientService client, final Endpoint endpoint)
+      throws DataRetrievalException {
+    Deadline.checkCurrent("retrieving " + resource);
+
+    final NegativeCache negativeCache = this.negativeCache;
+    if (negativeCache != null) {
+      final NegativeCache.FailureClass previousFailure = negativeCache.getFailure(resource);
+      if (previousFailure != null) {
+        logger.debug("Not retrieving {}, due to recent {} failure", resource, previousFailure);
+        throw new DataRetrievalException("Recent " + previousFailure + " failure retrieving " + resource);
+      }
+    }
+
+    LdpathProfiler.fetchTriggered();
+    HttpStatusRecorder.reset();
+    try {
+      return limitedRetrieveResource(resource, client, endpoint);
+    } catch (DataRetrievalException e) {
+      // a failure caused by the deadline passing says nothing about the resource
+      Deadline.checkCurrent("completing retrieval of " + resource);
+      if (negativeCache != null) {
+        final NegativeCache.FailureClass failureClass = NegativeCache.classify(e, HttpStatusRecorder.getLastStatus());
+        logger.warn("Failed to retrieve {} ({}): {}", resource, failureClass, e.getMessage());
+        negativeCache.recordFailure(resource, failureClass);
+      }
+      throw e;
+    }
+  }
+
+  /**
+   * Retrieves the resource, waiting first for the concurrency limiter (if
+   * any) to allow a request to the host the resource is requested from.
+   */
+  private ClientResponse limitedRetrieveResource(final String resource, final LDClientService client,
+                                                 final Endpoint endpoint) throws DataRetrievalException {
+    final HostConcurrencyLimiter limiter = this.concurrencyLimiter;
+    if (limiter == null) {
+      return super.retrieveResource(resource, client, endpoint);
+    }
+
+    final String host = getRequestHost(resource, endpoint);
+    try (HostConcurrencyLimiter.Permit permit = limiter.acquire(host)) {
+      currentPermit.set(permit);
+      try {
+        return super.retrieveResource(resource, client, endpoint);
+      } catch (DataRetrievalException e) {
+        if (isOverloaded(NegativeCache.classify(e, HttpStatusRecorder.getLastStatus()))) {
+          permit.overloaded();
+        }
+        throw e;
+      } finally {
+        currentPermit.remove();
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new DataRetrievalException("Interrupted while waiting to retrieve " + resource, e);
+    }
+  }
+
+  /**
+   * Returns true if a request that failed in the given way indicates that
+   * the host is overloaded: a 5xx response, or a timeout that was not caused
+   * by the current thread's {@link Deadline} (see
+   * {@link DeadlineRequestInterceptor}), since a deadline that shortened the
+   * timeout says nothing about the host.
+   *
+   * @param failureClass the class of the failure
+   * @return true if the host should be treated as overloaded
+   */
+  public static boolean isOverloaded(final NegativeCache.FailureClass failureClass) {
+    if (failureClass == NegativeCache.FailureClass.SERVER_ERROR) {
+      return true;
+    }
+    if (failureClass != NegativeCache.FailureClass.TIMEOUT) {
+      return false;
+    }
+    final Deadline deadline = Deadline.current();
+    return deadline == null || !deadline.isExpired();
+  }
+
+  private String getRequestHost(final String resource, final Endpoint endpoint) {
+    final String requestUrl = buildRequestUrl(resource, endpoint).get(0);
+    try {
+      return getHost(new URL(requestUrl));
+    } catch (MalformedURLException e) {
+      return requestUrl;
+    }
+  }
+
+  /**
+   * Returns the host name of the given URL, including the port, if any. This
+   * is the key used for per-host concurrency limits.
+   *
+   * @param url the URL
+   * @return the host name and port
+   */
+  public static String getHost(final URL url) {
+    return url.getPort() == -1 ? url.getHost() : url.getHost() + ":" + url.getPort();
+  }
+
+  @Override
+  public List<String> parseResponse(final String resourceUri, final String requestUrl, final Model triples,
+                                    final InputStream in, final String contentType) throws DataRetrievalException {
+    final HostConcurrencyLimiter.Permit permit = currentPermit.get();
+    if (permit != null) {
+      permit.responded();
+    }
+    final Set<String> predicates = this.predicateFilter;
+    if (predicates == null) {
+      return super.parseResponse(resourceUri, requestUrl, triples, in, contentType);
+    }
+
+    final RDFFormat format = contentType == null ? RDFFormat.RDFXML : RDFParserRegistry.getInstance()
+        .getFileFormatForMIMEType(contentType.split(";")[0].trim(), RDFFormat.RDFXML);
+    final RDFParser parser = Rio.createParser(format);
+    final FilteringHandler handler = new FilteringHandler(triples, predicates);
+    parser.setRDFHandler(handler);
+    try {
+      parser.parse(in, resourceUri);
+    } catch (RDFParseException | RDFHandlerException e) {
+      throw new DataRetrievalException("parse error while trying to parse remote RDF content", e);
+    } catch (IOException e) {
+      throw new DataRetrievalException("I/O error while trying to read remote RDF content", e);
+    }
+    logger.debug("Kept {} of {} triples from {}", handler.kept, handler.parsed, requestUrl);
+    return Collections.emptyList();
+  }
+
+  /**
+   * RDFHandler that adds the statements with a wanted predicate to a model
+   * as they are parsed, and drops the others.
+   */
+  private static class FilteringHandler extends RDFHandlerBase {
+    private final Model triples;
+
+    private final Set<String> predicates;
+
+    private long parsed = 0;
+
+    private long kept = 0;
+
+    FilteringHandler(final Model triples, final Set<String> predicates) {
+      this.triples = triples;
+      this.predicates = predicates;
+    }
+
+    @Override
+    public void handleStatement(final Statement statement) {
+      parsed++;
+      if (predicates.contains(statement.getPredicate().stringValue())) {
+        triples.add(statement);
+        kept++;
+      }
+    }
+  }
+
   /**
    * Returns either the linked data resource URL (if in the linkedDataMap), or
    * the given resourceURI,
@@ -102,14 +302,36 @@ public class ProxiedLinkedDataProvider extends LinkedDataProvider {
     }
 
     // Otherwise, it matches, so use the repoInternalUrl to rewrite the resource,
-    final String internalURL = new URIBuilder(repoInternalUrl)
+    final String internalURL = toInternalUrl(resourceURL);
+
+    logger.debug("Returning modified URL of: {}", internalURL);
+    return Collections.singletonList(internalURL);
+  }
+
+  /**
+   * Returns the "internal" URL of the given "external" repository URI, or
+   * the URI unchanged if it is not in the external repository.
+   *
+   * @param resourceUri the "external" URI
+   * @return the "internal" URL
+   */
+  public static String getInternalUrl(final String resourceUri) {
+    if (repoExternalUrl == null || !resourceUri.startsWith(repoExternalUrl)) {
+      return resourceUri;
+    }
+    try {
+      return toInternalUrl(new URL(resourceUri));
+    } catch (MalformedURLException e) {
+      return resourceUri;
+    }
+  }
+
+  private static String toInternalUrl(final URL resourceURL) {
+    return new URIBuilder(repoInternalUrl)
         .setPath(resourceURL.getPath())
         .setEncodedQuery(resourceURL.getQuery())
         .build()
         .toString();
-
-    logger.debug("Returning modified URL of: {}", internalURL);
-    return Collections.singletonList(internalURL);
   }
 
   /**
@@ -127,4 +349,44 @@ public class ProxiedLinkedDataProvider extends LinkedDataProvider {
   public void removeLinkedDataMapping(String resourceUri) {
     linkedDataMap.remove(resourceUri);
   }
+
+  /**
+   * Returns the "internal" repository URL that "external" repository URLs
+   * are rewritten to.
+   *
+   * @return the internal repository URL
+   */
+  public static String getRepoInternalUrl() {
+    return repoInternalUrl;
+  }
+
+  public NegativeCache getNegativeCache() {
+    return negativeCache;
+  }
+
+  public void setNegativeCache(NegativeCache negativeCache) {
+    this.negativeCache = negativeCache;
+  }
+
+  public HostConcurrencyLimiter getConcurrencyLimiter() {
+    return concurrencyLimiter;
+  }
+
+  public void setConcurrencyLimiter(HostConcurrencyLimiter concurrencyLimiter) {
+    this.concurrencyLimiter = concurrencyLimiter;
+  }
+
+  public Set<String> getPredicateFilter() {
+    return predicateFilter;
+  }
+
+  /**
+   * Sets the URIs of the predicates to keep from retrieved resources. When
+   * null (the default), all triples are kept.
+   *
+   * @param predicateFilter the predicate URIs to keep, or null
+   */
+  public void setPredicateFilter(Set<String> predicateFilter) {
+    this.predicateFilter = predicateFilter;
+  }
 }
@@ -0,0 +1,111 @@
+package edu.umd.lib.ldpath;
+
+import org.apache.marmotta.ldcache.api.LDCachingBackend;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Supplier;
+
+/**
+ * Registry of LDCachingBackends shared by name, so that several processors
+ * can use a single cache instead of each holding its own copy of the same
+ * triples.
+ * <p>
+ * A shared backend is created and initialized when it is first acquired,
+ * and is shut down when the last handle to it is shut down.
+ */
+public final class SharedCachingBackends {
+  private static final Logger logger = LoggerFactory.getLogger(SharedCachingBackends.class);
+
+  private static final Map<String, SharedBackend> backends = new HashMap<>();
+
+  private SharedCachingBackends() {}
+
+  /**
+   * Returns a handle to the shared backend with the given name, creating and
+   * initializing it with the given factory if it does not exist yet.
+   * <p>
+   * Initializing the returned handle does nothing; shutting it down releases
+   * the reference to the shared backend, and shuts down the shared backend
+   * if it was the last reference.
+   *
+   * @param name the name of the shared backend
+   * @param factory creates the backend, if it does not exist yet
+   * @return a handle to the shared backend
+   */
+  public static synchronized LDCachingBackend acquire(final String name, final Supplier<LDCachingBackend> factory) {
+    SharedBackend shared = backends.get(name);
+    if (shared == null) {
+      logger.info("Creating shared LD cache backend '{}'", name);
+      final LDCachingBackend backend = factory.get();
+      backend.initialize();
+      shared = new SharedBackend(backend);
+      backends.put(name, shared);
+    }
+    shared.references++;
+    logger.debug("Acquired shared LD cache backend '{}' ({} references)", name, shared.references);
+    return new Handle(name, shared.backend);
+  }
+
+  /**
+   * Returns the number of references to the shared backend with the given
+   * name, or 0 if it does not exist.
+   *
+   * @param name the name of the shared backend
+   * @return the number of references
+   */
+  public static synchronized int getReferenceCount(final String name) {
+    final SharedBackend shared = backends.get(name);
+    return shared == null ? 0 : shared.references;
+  }
+
+  private static synchronized void release(final String name) {
+    final SharedBackend shared = backends.get(name);
+    if (shared == null) {
+      return;
+    }
+    shared.references--;
+    logger.debug("Released shared LD cache backend '{}' ({} references)", name, shared.references);
+    if (shared.references <= 0) {
+      logger.info("Shutting down shared LD cache backend '{}'", name);
+      backends.remove(name);
+      shared.backend.shutdown();
+    }
+  }
+
+  private static class SharedBackend {
+    final LDCachingBackend backend;
+
+    int references = 0;
+
+    SharedBackend(final LDCachingBackend backend) {
+      this.backend = backend;
+    }
+  }
+
+  private static class Handle extends ForwardingCachingBackend {
+    private final String name;
+
+    private final AtomicBoolean released = new AtomicBoolean(false);
+
+    Handle(final String name, final LDCachingBackend delegate) {
+      super(delegate);
+      this.name = name;
+    }
+
+    @Override
+    public void initialize() {
+      // the shared backend is initialized when it is created
+    }
+
+    @Override
+    public void shutdown() {
+      if (released.compareAndSet(false, true)) {
+        release(name);
+      }
+    }
+  }
+}
@@ -0,0 +1,182 @@
+package edu.umd.lib.ldpath;
+
+import org.apache.marmotta.ldcache.api.LDCachingBackend;
+import org.apache.marmotta.ldcache.model.CacheEntry;
+import org.openrdf.model.URI;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * LDCachingBackend that keeps a {@link CacheSnapshotFile} of the cache
+ * contents, so that a new instance starts with a warm cache instead of an
+ * empty one.
+ * <p>
+ * The snapshot is loaded when the backend is initialized (unless it is
+ * older than the configured maximum age), and written when the backend is
+ * shut down, as well as periodically if an interval is set. If the cached
+ * triples are filtered (see {@link #setPredicateFilter(Set)}), a snapshot
+ * written with a different filter is not loaded.
+ */
+public class SnapshotCachingBackend extends ForwardingCachingBackend {
+  private static final Logger logger = LoggerFactory.getLogger(SnapshotCachingBackend.class);
+
+  private final CacheSnapshotFile snapshotFile;
+
+  /**
+   * The resources with entries in the delegate backend, since the
+   * LDCachingBackend interface does not provide a way to list them
+   */
+  private final Set<URI> resources = ConcurrentHashMap.newKeySet();
+
+  private long interval = 0;
+
+  private long maxAge = TimeUnit.DAYS.toSeconds(1);
+
+  private ScheduledExecutorService scheduler;
+
+  private String contentKey = CacheSnapshotFile.contentKey(null);
+
+  public SnapshotCachingBackend(final LDCachingBackend delegate, final File file) {
+    super(delegate);
+    this.snapshotFile = new CacheSnapshotFile(file);
+  }
+
+  @Override
+  public void putEntry(final URI resource, final CacheEntry entry) {
+    super.putEntry(resource, entry);
+    resources.add(resource);
+  }
+
+  @Override
+  public void removeEntry(final URI resource) {
+    super.removeEntry(resource);
+    resources.remove(resource);
+  }
+
+  @Override
+  public void clear() {
+    super.clear();
+    resources.clear();
+  }
+
+  @Override
+  public void initialize() {
+    super.initialize();
+    loadSnapshot();
+    if (interval > 0) {
+      scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+        final Thread thread = new Thread(r, "ld-cache-snapshot");
+        thread.setDaemon(true);
+        return thread;
+      });
+      scheduler.scheduleWithFixedDelay(this::writeSnapshotQuietly, interval, interval, TimeUnit.SECONDS);
+    }
+  }
+
+  @Override
+  public void shutdown() {
+    if (scheduler != null) {
+      scheduler.shutdownNow();
+      scheduler = null;
+    }
+    writeSnapshotQuietly();
+    super.shutdown();
+  }
+
+  /**
+   * Writes all current, unexpired cache entries to the snapshot file.
+   *
+   * @throws IOException if an I/O error occurs
+   */
+  public synchronized void writeSnapshot() throws IOException {
+    final long start = System.currentTimeMillis();
+    final List<CacheEntry> entries = new ArrayList<>(resources.size());
+    for (final URI resource : resources) {
+      final CacheEntry entry = super.getEntry(resource);
+      if (entry == null || entry.getExpiryDate() != null && entry.getExpiryDate().getTime() <= start) {
+        resources.remove(resource);
+      } else {
+        entries.add(entry);
+      }
+    }
+    snapshotFile.write(entries, contentKey);
+    logger.info("Wrote {} LD cache entries to {} in {} ms", entries.size(), snapshotFile.getFile(),
+        System.currentTimeMillis() - start);
+  }
+
+  private void writeSnapshotQuietly() {
+    try {
+      writeSnapshot();
+    } catch (IOException | RuntimeException e) {
+      logger.error("Unable to write LD cache snapshot to {}: {}", snapshotFile.getFile(), e.getMessage());
+    }
+  }
+
+  private void loadSnapshot() {
+    if (!snapshotFile.exists()) {
+      logger.info("LD cache snapshot {} does not exist; starting with an empty cache", snapshotFile.getFile());
+      return;
+    }
+    final long start = System.currentTimeMillis();
+    try {
+      final List<CacheEntry> entries = snapshotFile.read(TimeUnit.SECONDS.toMillis(maxAge), contentKey);
+      for (final CacheEntry entry : entries) {
+        putEntry(entry.getResource(), entry);
+      }
+      logger.info("Loaded {} LD cache entries from {} in {} ms", entries.size(), snapshotFile.getFile(),
+          System.currentTimeMillis() - start);
+    } catch (IOException | RuntimeException e) {
+      logger.error("Unable to load LD cache snapshot from {}: {}", snapshotFile.getFile(), e.getMessage());
+    }
+  }
+
+  public long getInterval() {
+    return interval;
+  }
+
+  /**
+   * Sets how often (in seconds) to write the snapshot, in addition to
+   * writing it on shutdown. Must be set before the backend is initialized.
+   *
+   * @param interval the snapshot interval, or 0 to only write on shutdown
+   */
+  public void setInterval(long interval) {
+    this.interval = interval;
+  }
+
+  /**
+   * Sets the predicates the cached triples are filtered to, which are
+   * recorded in the snapshot. Must be set before the backend is
+   * initialized.
+   *
+   * @param predicates the predicate URIs kept, or null if triples are not
+   *                   filtered
+   */
+  public void setPredicateFilter(Set<String> predicates) {
+    this.contentKey = CacheSnapshotFile.contentKey(predicates);
+  }
+
+  public long getMaxAge() {
+    return maxAge;
+  }
+
+  /**
+   * Sets the maximum age (in seconds) of a snapshot that will be loaded on
+   * initialization. Older snapshots are ignored.
+   *
+   * @param maxAge the maximum snapshot age, or 0 for no limit
+   */
+  public void setMaxAge(long maxAge) {
+    this.maxAge = maxAge;
+  }
+}
@@ -0,0 +1,162 @@
+package edu.umd.lib.ldpath;
+
+import org.openrdf.model.Resource;
+import org.openrdf.model.Statement;
+import org.openrdf.model.URI;
+import org.openrdf.model.Value;
+import org.openrdf.model.ValueFactory;
+import org.openrdf.model.impl.ValueFactoryImpl;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Returns a canonical instance for equal RDF values, so that the many copies
+ * of the same predicate URIs, vocabulary URIs and literals held in the LD
+ * cache share a single object.
+ * <p>
+ * Canonical instances are only weakly referenced, so values that are no
+ * longer used anywhere else can be garbage collected; their entries are
+ * removed as they are collected. The interner is safe for concurrent use
+ * without a global lock. When it holds more than its maximum size, just
+ * enough entries are evicted to bring it back to that size; an evicted
+ * value is still valid, but later equal values get a new canonical
+ * instance.
+ */
+public class ValueInterner {
+  private final ConcurrentMap<Ref, Ref> values = new ConcurrentHashMap<>();
+
+  private final ReferenceQueue<Value> collected = new ReferenceQueue<>();
+
+  private final ValueFactory valueFactory = ValueFactoryImpl.getInstance();
+
+  private final int maxSize;
+
+  private final LongAdder hits = new LongAdder();
+
+  private final LongAdder misses = new LongAdder();
+
+  public ValueInterner(final int maxSize) {
+    this.maxSize = maxSize;
+  }
+
+  /**
+   * Returns the canonical instance of the given value.
+   *
+   * @param value the value
+   * @param <V> the type of value
+   * @return the canonical instance equal to the value
+   */
+  @SuppressWarnings("unchecked")
+  public <V extends Value> V intern(final V value) {
+    removeCollected();
+    final Ref existing = values.get(new Ref(value, null));
+    Value canonical = existing == null ? null : existing.get();
+    if (canonical != null) {
+      hits.increment();
+      return (V) canonical;
+    }
+
+    final Ref ref = new Ref(value, collected);
+    while (true) {
+      final Ref previous = values.putIfAbsent(ref, ref);
+      if (previous == null) {
+        misses.increment();
+        evictExcess();
+        return value;
+      }
+      canonical = previous.get();
+      if (canonical != null) {
+        hits.increment();
+        return (V) canonical;
+      }
+      // collected, but not removed yet
+      values.remove(previous, previous);
+    }
+  }
+
+  /**
+   * Returns a statement equal to the given statement, made of canonical
+   * values. The context of the statement is not kept.
+   *
+   * @param statement the statement
+   * @return the statement with canonical values
+   */
+  public Statement intern(final Statement statement) {
+    final Resource subject = intern(statement.getSubject());
+    final URI predicate = intern(statement.getPredicate());
+    final Value object = intern(statement.getObject());
+    if (subject == statement.getSubject() && predicate == statement.getPredicate()
+        && object == statement.getObject() && statement.getContext() == null) {
+      return statement;
+    }
+    return valueFactory.createStatement(subject, predicate, object);
+  }
+
+  public int size() {
+    removeCollected();
+    return values.size();
+  }
+
+  public long getHits() {
+    return hits.sum();
+  }
+
+  public long getMisses() {
+    return misses.sum();
+  }
+
+  private void removeCollected() {
+    Reference<? extends Value> ref;
+    while ((ref = collected.poll()) != null) {
+      values.remove(ref);
+    }
+  }
+
+  private void evictExcess() {
+    int excess = values.size() - maxSize;
+    if (excess <= 0) {
+      return;
+    }
+    final Iterator<Ref> iterator = values.keySet().iterator();
+    while (excess-- > 0 && iterator.hasNext()) {
+      iterator.next();
+      iterator.remove();
+    }
+  }
+
+  /**
+   * Weak reference to a canonical value, which is equal to any reference to
+   * an equal value while its value has not been collected.
+   */
+  private static final class Ref extends WeakReference<Value> {
+    private final int hash;
+
+    Ref(final Value value, final ReferenceQueue<Value> queue) {
+      super(value, queue);
+      this.hash = value.hashCode();
+    }
+
+    @Override
+    public int hashCode() {
+      return hash;
+    }
+
+    @Override
+    public boolean equals(final Object o) {
+      if (o == this) {
+        return true;
+      }
+      if (!(o instanceof Ref)) {
+        return false;
+      }
+      final Value value = get();
+      return value != null && value.equals(((Ref) o).get());
+    }
+  }
+}
@@ -0,0 +1,95 @@
+package edu.umd.lib.camel.utils;
+
+import java.util.List;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Creates executors for tasks that spend most of their time blocked on I/O,
+ * such as retrieving linked data resources.
+ * <p>
+ * This is the Java 21 version, which runs each task on its own virtual
+ * thread, so that a blocked task does not hold a platform thread. Tasks wait
+ * (on their virtual thread) for a permit before running, so the concurrency
+ * is still bounded.
+ */
+public final class BlockingTaskExecutors {
+  private BlockingTaskExecutors() {}
+
+  /**
+   * Returns a new executor that runs at most the given number of tasks at
+   * once.
+   *
+   * @param name the prefix for the names of the executor's threads
+   * @param maxConcurrency the maximum number of tasks run at once
+   * @return the executor
+   */
+  public static ExecutorService newExecutor(final String name, final int maxConcurrency) {
+    final ExecutorService delegate = Executors.newThreadPerTaskExecutor(
+        Thread.ofVirtual().name(name + "-", 0).factory());
+    return new BoundedExecutor(delegate, maxConcurrency);
+  }
+
+  /**
+   * @return true if the executors run tasks on virtual threads
+   */
+  public static boolean usesVirtualThreads() {
+    return true;
+  }
+
+  private static class BoundedExecutor extends AbstractExecutorService {
+    private final ExecutorService delegate;
+
+    private final Semaphore permits;
+
+    BoundedExecutor(final ExecutorService delegate, final int maxConcurrency) {
+      this.delegate = delegate;
+      this.permits = new Semaphore(maxConcurrency);
+    }
+
+    @Override
+    public void execute(final Runnable command) {
+      delegate.execute(() -> {
+        try {
+          permits.acquire();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          return;
+        }
+        try {
+          command.run();
+        } finally {
+          permits.release();
+        }
+      });
+    }
+
+    @Override
+    public void shutdown() {
+      delegate.shutdown();
+    }
+
+    @Override
+    public List<Runnable> shutdownNow() {
+      return delegate.shutdownNow();
+    }
+
+    @Override
+    public boolean isShutdown() {
+      return delegate.isShutdown();
+    }
+
+    @Override
+    public boolean isTerminated() {
+      return delegate.isTerminated();
+    }
+
+    @Override
+    public boolean awaitTermination(final long timeout, final TimeUnit unit) throws InterruptedException {
+      return delegate.awaitTermination(timeout, unit);
+    }
+  }
+}
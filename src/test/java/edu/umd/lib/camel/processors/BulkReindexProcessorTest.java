@@ -0,0 +1,207 @@
+package edu.umd.lib.camel.processors;
+
+import edu.umd.lib.camel.utils.FingerprintStore;
+import org.apache.camel.Exchange;
+import org.apache.camel.RoutesBuilder;
+import org.apache.camel.builder.RouteBuilder;
+import org.apache.camel.component.mock.MockEndpoint;
+import org.apache.camel.impl.DefaultExchange;
+import org.apache.camel.test.junit4.CamelTestSupport;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Tests the crawl of a BulkReindexProcessor with a stub LdpathProcessor, so
+ * that no repository is needed.
+ */
+public class BulkReindexProcessorTest extends CamelTestSupport {
+  private static final String ROOT = "http://localhost:8080/rest/pcdm";
+
+  private static final String A = ROOT + "/a";
+
+  private static final String A1 = A + "/1";
+
+  private static final String A2 = A + "/2";
+
+  private static final String B = ROOT + "/b";
+
+  private static final String B1 = B + "/1";
+
+  @Rule
+  public TemporaryFolder tempFolder = new TemporaryFolder();
+
+  @Override
+  protected RoutesBuilder createRouteBuilder() {
+    return new RouteBuilder() {
+      @Override
+      public void configure() {
+        from("direct:unavailable").throwException(new IllegalStateException("index unavailable"));
+      }
+    };
+  }
+
+  @Test
+  public void testBatchesAndFingerprints() throws Exception {
+    final StubLdpathProcessor ldpathProcessor = new StubLdpathProcessor();
+    final FingerprintStore store = new FingerprintStore();
+    ldpathProcessor.setFingerprintStore(store);
+    final BulkReindexProcessor processor = newProcessor(ldpathProcessor, "mock:index");
+    processor.setBatchSize(2);
+
+    final MockEndpoint index = getMockEndpoint("mock:index");
+    index.expectedMessageCount(3);
+    index.expectedHeaderReceived(BulkReindexProcessor.BATCH_SIZE_HEADER, 2);
+
+    final Exchange exchange = crawl(processor);
+    index.assertIsSatisfied();
+    assertEquals(6L, exchange.getIn().getHeader(BulkReindexProcessor.PROCESSED_HEADER));
+    assertEquals(0L, exchange.getIn().getHeader(BulkReindexProcessor.FAILED_HEADER));
+    assertEquals(0L, exchange.getIn().getHeader(BulkReindexProcessor.PARTIAL_HEADER));
+
+    // fingerprints are committed once their batch is sent
+    for (final String uri : Arrays.asList(ROOT, A, A1, A2, B, B1)) {
+      assertTrue(store.matches(uri, FingerprintStore.fingerprint(StubLdpathProcessor.json(uri))));
+    }
+  }
+
+  @Test
+  public void testFailedAndPartialSubtreesAreNotCheckpointed() throws Exception {
+    final StubLdpathProcessor ldpathProcessor = new StubLdpathProcessor();
+    ldpathProcessor.failing.add(A1);
+    ldpathProcessor.partial.add(B);
+    final File checkpointFile = new File(tempFolder.getRoot(), "checkpoint.txt");
+    final BulkReindexProcessor processor = newProcessor(ldpathProcessor, "mock:index");
+    processor.setCheckpointFile(checkpointFile);
+
+    final MockEndpoint index = getMockEndpoint("mock:index");
+    index.expectedMessageCount(1);
+    // neither the failed nor the partial document is sent
+    index.expectedHeaderReceived(BulkReindexProcessor.BATCH_SIZE_HEADER, 4);
+
+    final Exchange exchange = crawl(processor);
+    index.assertIsSatisfied();
+    assertEquals(5L, exchange.getIn().getHeader(BulkReindexProcessor.PROCESSED_HEADER));
+    assertEquals(1L, exchange.getIn().getHeader(BulkReindexProcessor.FAILED_HEADER));
+    assertEquals(1L, exchange.getIn().getHeader(BulkReindexProcessor.PARTIAL_HEADER));
+    // the resources contained in the partial document are still crawled
+    assertTrue(ldpathProcessor.processed.contains(B1));
+
+    assertTrue(checkpointFile.exists());
+    final List<String> completed = Files.readAllLines(checkpointFile.toPath());
+    assertEquals(new HashSet<>(Arrays.asList(A2, B1)), new HashSet<>(completed));
+
+    // resuming skips the completed subtrees, and removes the checkpoint
+    ldpathProcessor.failing.clear();
+    ldpathProcessor.partial.clear();
+    ldpathProcessor.processed.clear();
+    final Exchange resumed = crawl(processor);
+    assertEquals(2L, resumed.getIn().getHeader(BulkReindexProcessor.SKIPPED_HEADER));
+    assertEquals(4L, resumed.getIn().getHeader(BulkReindexProcessor.PROCESSED_HEADER));
+    assertEquals(new HashSet<>(Arrays.asList(ROOT, A, A1, B)), ldpathProcessor.processed);
+    assertFalse(checkpointFile.exists());
+  }
+
+  @Test
+  public void testAbortWaitsForRunningTasks() throws Exception {
+    final StubLdpathProcessor ldpathProcessor = new StubLdpathProcessor();
+    final FingerprintStore store = new FingerprintStore();
+    ldpathProcessor.setFingerprintStore(store);
+    final File checkpointFile = new File(tempFolder.getRoot(), "checkpoint.txt");
+    final BulkReindexProcessor processor = newProcessor(ldpathProcessor, "direct:unavailable");
+    processor.setBatchSize(1);
+    processor.setCheckpointFile(checkpointFile);
+
+    try {
+      crawl(processor);
+      fail("Expected the failure to send a batch to stop the crawl");
+    } catch (RuntimeException e) {
+      // expected
+    }
+    assertEquals(0, ldpathProcessor.running.get());
+    assertEquals(0, store.size());
+    // nothing was sent, so nothing is completed
+    assertTrue(!checkpointFile.exists() || Files.readAllLines(checkpointFile.toPath()).isEmpty());
+  }
+
+  private BulkReindexProcessor newProcessor(final LdpathProcessor ldpathProcessor, final String endpointUri) {
+    final BulkReindexProcessor processor = new BulkReindexProcessor();
+    processor.setLdpathProcessor(ldpathProcessor);
+    processor.setEndpointUri(endpointUri);
+    processor.setConcurrency(3);
+    return processor;
+  }
+
+  private Exchange crawl(final BulkReindexProcessor processor) throws Exception {
+    final Exchange exchange = new DefaultExchange(context);
+    exchange.getIn().setHeader("CamelFcrepoUri", ROOT);
+    processor.process(exchange);
+    return exchange;
+  }
+
+  /**
+   * LdpathProcessor that returns a JSON document naming the resource, and
+   * the resources of a fixed tree as the contained resources.
+   */
+  private static class StubLdpathProcessor extends LdpathProcessor {
+    private static final long serialVersionUID = 1L;
+
+    private final Map<String, Set<String>> children = new HashMap<>();
+
+    private final Set<String> failing = Collections.synchronizedSet(new HashSet<>());
+
+    private final Set<String> partial = Collections.synchronizedSet(new HashSet<>());
+
+    private final Set<String> processed = Collections.synchronizedSet(new HashSet<>());
+
+    private final AtomicInteger running = new AtomicInteger();
+
+    StubLdpathProcessor() {
+      children.put(ROOT, new LinkedHashSet<>(Arrays.asList(A, B)));
+      children.put(A, new LinkedHashSet<>(Arrays.asList(A1, A2)));
+      children.put(B, Collections.singleton(B1));
+    }
+
+    static String json(final String uri) {
+      return "{\"id\":[\"" + uri + "\"]}";
+    }
+
+    @Override
+    public void process(final Exchange exchange) {
+      running.incrementAndGet();
+      try {
+        final String uri = exchange.getIn().getHeader("CamelFcrepoUri", String.class);
+        processed.add(uri);
+        if (failing.contains(uri)) {
+          throw new IllegalStateException("Unable to retrieve " + uri);
+        }
+        final String json = json(uri);
+        exchange.getIn().setBody(json);
+        if (partial.contains(uri)) {
+          exchange.getIn().setHeader(PARTIAL_HEADER, true);
+        } else if (getFingerprintStore() != null) {
+          exchange.getIn().setHeader(FINGERPRINT_HEADER, FingerprintStore.fingerprint(json));
+        }
+      } finally {
+        running.decrementAndGet();
+      }
+    }
+
+    @Override
+    public Set<String> getContainedResources(final String resourceUri) {
+      return children.getOrDefault(resourceUri, Collections.emptySet());
+    }
+  }
+}
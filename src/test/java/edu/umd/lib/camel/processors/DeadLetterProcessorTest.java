@@ -0,0 +1,105 @@
+package edu.umd.lib.camel.processors;
+
+import org.apache.camel.Exchange;
+import org.apache.camel.Message;
+import org.apache.camel.RuntimeCamelException;
+import org.apache.camel.impl.DefaultCamelContext;
+import org.apache.camel.impl.DefaultExchange;
+import org.apache.marmotta.ldpath.exception.LDPathParseException;
+import org.junit.Test;
+
+import java.net.SocketTimeoutException;
+
+import static edu.umd.lib.camel.processors.DeadLetterProcessor.*;
+import static org.junit.Assert.*;
+
+public class DeadLetterProcessorTest {
+  /**
+   * Stands in for exceptions such as HttpOperationFailedException that
+   * report an HTTP status code
+   */
+  public static class StatusException extends RuntimeException {
+    private final int statusCode;
+
+    public StatusException(final int statusCode) {
+      super("HTTP operation failed with status code " + statusCode);
+      this.statusCode = statusCode;
+    }
+
+    public int getStatusCode() {
+      return statusCode;
+    }
+  }
+
+  private Exchange failedExchange(final Exception cause) {
+    final Exchange exchange = new DefaultExchange(new DefaultCamelContext());
+    exchange.setProperty(Exchange.TO_ENDPOINT, "http://localhost:8983/solr/fedora4/update");
+    exchange.setProperty(Exchange.EXCEPTION_CAUGHT, cause);
+    return exchange;
+  }
+
+  @Test
+  public void testNoException() {
+    final Exchange exchange = new DefaultExchange(new DefaultCamelContext());
+    exchange.setProperty(Exchange.TO_ENDPOINT, "direct:index");
+
+    new DeadLetterProcessor().process(exchange);
+
+    final Message in = exchange.getIn();
+    assertEquals("direct:index", in.getHeader(LAST_ENDPOINT_URI_HEADER));
+    assertNull(in.getHeader(EXCEPTION_MESSAGE_HEADER));
+    assertNull(in.getHeader(RETRYABLE_HEADER));
+  }
+
+  @Test
+  public void testParseErrorIsPermanent() {
+    final Exchange exchange = failedExchange(
+        new RuntimeCamelException("LDPath parse error", new LDPathParseException("unexpected token")));
+    final DeadLetterProcessor processor = new DeadLetterProcessor();
+    processor.process(exchange);
+
+    final Message in = exchange.getIn();
+    assertEquals("LDPath parse error", in.getHeader(EXCEPTION_MESSAGE_HEADER));
+    assertEquals(FailureType.LDPATH_PARSE.name(), in.getHeader(FAILURE_TYPE_HEADER));
+    assertEquals(false, in.getHeader(RETRYABLE_HEADER));
+    assertNull(in.getHeader(SUGGESTED_DELAY_HEADER));
+    assertFalse(processor.isRetryable(exchange));
+  }
+
+  @Test
+  public void testHttpStatus() {
+    final DeadLetterProcessor processor = new DeadLetterProcessor();
+
+    final Exchange notFound = failedExchange(new StatusException(404));
+    processor.process(notFound);
+    assertEquals(404, notFound.getIn().getHeader(HTTP_STATUS_HEADER));
+    assertEquals(FailureType.HTTP_CLIENT_ERROR.name(), notFound.getIn().getHeader(FAILURE_TYPE_HEADER));
+    assertFalse(processor.isRetryable(notFound));
+
+    final Exchange unavailable = failedExchange(new RuntimeCamelException(new StatusException(503)));
+    processor.process(unavailable);
+    assertEquals(503, unavailable.getIn().getHeader(HTTP_STATUS_HEADER));
+    assertEquals(true, unavailable.getIn().getHeader(RETRYABLE_HEADER));
+
+    assertTrue(processor.isRetryable(failedExchange(new StatusException(429))));
+  }
+
+  @Test
+  public void testTimeoutBacksOff() {
+    final DeadLetterProcessor processor = new DeadLetterProcessor();
+    processor.setBaseDelay(1000);
+    processor.setMaxDelay(30000);
+
+    final Exchange exchange = failedExchange(new RuntimeCamelException(new SocketTimeoutException("Read timed out")));
+    exchange.getIn().setHeader(Exchange.REDELIVERY_COUNTER, 2);
+    processor.process(exchange);
+
+    final Message in = exchange.getIn();
+    assertEquals(FailureType.TIMEOUT.name(), in.getHeader(FAILURE_TYPE_HEADER));
+    assertEquals(SocketTimeoutException.class.getName(), in.getHeader(EXCEPTION_TYPE_HEADER));
+    assertEquals(20000L, in.getHeader(SUGGESTED_DELAY_HEADER));
+
+    assertEquals(30000L, processor.getSuggestedDelay(FailureType.TIMEOUT, 10));
+    assertEquals(1000L, processor.getSuggestedDelay(FailureType.UNKNOWN, 0));
+  }
+}
@@ -0,0 +1,42 @@
+package edu.umd.lib.camel.processors;
+
+import edu.umd.lib.camel.utils.DependencyIndex;
+import org.apache.camel.Exchange;
+import org.apache.camel.impl.DefaultCamelContext;
+import org.apache.camel.impl.DefaultExchange;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+
+public class DependentResourcesProcessorTest {
+  private static final String PLACE = "http://localhost:8080/rest/pcdm/places/college-park";
+
+  private static final String FIRST = "http://localhost:8080/rest/pcdm/objects/1";
+
+  private static final String SECOND = "http://localhost:8080/rest/pcdm/objects/2";
+
+  @Test
+  public void testDependents() {
+    final DependencyIndex index = new DependencyIndex();
+    index.record(FIRST, Collections.singletonList(PLACE));
+    index.record(SECOND, Collections.singletonList(PLACE));
+    final DependentResourcesProcessor processor = new DependentResourcesProcessor();
+    processor.setDependencyIndex(index);
+
+    final Exchange exchange = new DefaultExchange(new DefaultCamelContext());
+    exchange.getIn().setHeader("CamelFcrepoUri", PLACE);
+    processor.process(exchange);
+    assertEquals(Arrays.asList(FIRST, SECOND), exchange.getIn().getBody());
+    assertEquals(2, exchange.getIn().getHeader(DependentResourcesProcessor.DEPENDENT_COUNT_HEADER));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testMissingUri() {
+    final DependentResourcesProcessor processor = new DependentResourcesProcessor();
+    processor.setDependencyIndex(new DependencyIndex());
+    processor.process(new DefaultExchange(new DefaultCamelContext()));
+  }
+}
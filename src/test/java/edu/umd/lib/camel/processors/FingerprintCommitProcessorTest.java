@@ -0,0 +1,47 @@
+package edu.umd.lib.camel.processors;
+
+import edu.umd.lib.camel.utils.FingerprintStore;
+import org.apache.camel.Exchange;
+import org.apache.camel.impl.DefaultCamelContext;
+import org.apache.camel.impl.DefaultExchange;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class FingerprintCommitProcessorTest {
+  private static final String URI = "http://localhost:8080/rest/foo";
+
+  private static final String JSON = "{\"id\":[\"foo\"]}";
+
+  @Test
+  public void testCommitAfterDelivery() {
+    final FingerprintStore store = new FingerprintStore();
+    final FingerprintCommitProcessor processor = new FingerprintCommitProcessor();
+    processor.setFingerprintStore(store);
+
+    final Exchange exchange = new DefaultExchange(new DefaultCamelContext());
+    exchange.getIn().setHeader("CamelFcrepoUri", URI);
+    final String fingerprint = FingerprintStore.fingerprint(JSON);
+    exchange.getIn().setHeader(LdpathProcessor.FINGERPRINT_HEADER, fingerprint);
+
+    // nothing is recorded until the commit step runs
+    assertFalse(store.matches(URI, fingerprint));
+    processor.process(exchange);
+    assertTrue(store.matches(URI, fingerprint));
+    assertEquals(1, store.size());
+  }
+
+  @Test
+  public void testNoFingerprint() {
+    final FingerprintStore store = new FingerprintStore();
+    final FingerprintCommitProcessor processor = new FingerprintCommitProcessor();
+    processor.setFingerprintStore(store);
+
+    final Exchange exchange = new DefaultExchange(new DefaultCamelContext());
+    exchange.getIn().setHeader("CamelFcrepoUri", URI);
+    processor.process(exchange);
+    assertEquals(0, store.size());
+  }
+}
@@ -0,0 +1,211 @@
+package edu.umd.lib.camel.processors;
+
+import org.apache.camel.CamelContext;
+import org.apache.camel.Exchange;
+import org.apache.camel.Message;
+import org.apache.camel.impl.DefaultCamelContext;
+import org.apache.camel.impl.DefaultExchange;
+import org.apache.jena.query.QueryFactory;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class SparqlQueryProcessorTest {
+  private static final String URI = "http://localhost:8080/rest/foo";
+
+  private static final String RDF_XML = "<?xml version=\"1.0\"?>\n" +
+      "<rdf:RDF xmlns:rdf=\"http://www.w3.org/1999/02/22-rdf-syntax-ns#\"\n" +
+      "         xmlns:dcterms=\"http://purl.org/dc/terms/\"\n" +
+      "         xmlns:ldp=\"http://www.w3.org/ns/ldp#\">\n" +
+      "  <rdf:Description rdf:about=\"" + URI + "\">\n" +
+      "    <dcterms:title>Foo</dcterms:title>\n" +
+      "    <ldp:contains rdf:resource=\"" + URI + "/bar\"/>\n" +
+      "  </rdf:Description>\n" +
+      "</rdf:RDF>\n";
+
+  private static final String TITLE_QUERY = "PREFIX dcterms: <http://purl.org/dc/terms/>\n" +
+      "SELECT ?title WHERE { ?s dcterms:title ?title }";
+
+  @Test
+  public void testSelectQuery() {
+    assertEquals("Foo\r\n", runQuery(TITLE_QUERY, false));
+  }
+
+  @Test
+  public void testSelectQueryWithFilteredTriples() {
+    assertEquals("Foo\r\n", runQuery(TITLE_QUERY, true));
+  }
+
+  @Test
+  public void testVariablePredicateWithFilteredTriples() {
+    final String query = "SELECT (COUNT(*) AS ?count) WHERE { ?s ?p ?o }";
+    assertEquals("2\r\n", runQuery(query, true));
+  }
+
+  @Test
+  public void testBindingWithFilteredTriples() {
+    final String query = "PREFIX dcterms: <http://purl.org/dc/terms/>\n" +
+        "SELECT ?title WHERE { ?uri dcterms:title ?title }";
+    final SparqlQueryProcessor processor = new SparqlQueryProcessor();
+    processor.setQuery(query);
+    processor.setResultsFormatName(SparqlQueryProcessor.CSV_WITHOUT_HEADER);
+    processor.setFilterTriples(true);
+
+    final Exchange exchange = createExchange();
+    exchange.getIn().setHeader("CamelSparqlQueryBinding-URI-uri", URI + "/bar");
+    processor.process(exchange);
+    assertEquals("", exchange.getIn().getBody(String.class));
+  }
+
+  @Test
+  public void testSpillToDisk() {
+    final SparqlQueryProcessor processor = new SparqlQueryProcessor();
+    processor.setQuery(TITLE_QUERY);
+    processor.setResultsFormatName(SparqlQueryProcessor.CSV_WITHOUT_HEADER);
+    processor.setSpillThreshold(16);
+
+    final Exchange exchange = createExchange();
+    processor.process(exchange);
+    assertEquals("Foo\r\n", exchange.getIn().getBody(String.class));
+  }
+
+  @Test
+  public void testBelowSpillThreshold() {
+    final SparqlQueryProcessor processor = new SparqlQueryProcessor();
+    processor.setQuery(TITLE_QUERY);
+    processor.setResultsFormatName(SparqlQueryProcessor.CSV_WITHOUT_HEADER);
+    processor.setSpillThreshold(1024 * 1024);
+
+    final Exchange exchange = createExchange();
+    processor.process(exchange);
+    assertEquals("Foo\r\n", exchange.getIn().getBody(String.class));
+  }
+
+  @Test
+  public void testBatch() {
+    final SparqlQueryProcessor processor = new SparqlQueryProcessor();
+    processor.setQuery(TITLE_QUERY);
+    processor.setResultsFormatName(SparqlQueryProcessor.CSV_WITHOUT_HEADER);
+    processor.setBatch(true);
+
+    final Exchange first = createExchange();
+    final Exchange second = createExchange();
+    second.getIn().setBody(RDF_XML.replace("Foo", "Bar"));
+
+    final Exchange aggregated = createExchange();
+    aggregated.getIn().setBody(Arrays.asList(first, second));
+    processor.process(aggregated);
+
+    assertEquals("Foo\r\n", first.getIn().getBody(String.class));
+    assertEquals("Bar\r\n", second.getIn().getBody(String.class));
+  }
+
+  @Test
+  public void testBatchWithBindings() {
+    final String query = "PREFIX dcterms: <http://purl.org/dc/terms/>\n" +
+        "SELECT ?title WHERE { ?uri dcterms:title ?title }";
+    final SparqlQueryProcessor processor = new SparqlQueryProcessor();
+    processor.setQuery(query);
+    processor.setResultsFormatName(SparqlQueryProcessor.CSV_WITHOUT_HEADER);
+    processor.setBatch(true);
+
+    final Exchange matching = createExchange();
+    matching.getIn().setHeader("CamelSparqlQueryBinding-URI-uri", URI);
+    final Exchange notMatching = createExchange();
+    notMatching.getIn().setHeader("CamelSparqlQueryBinding-URI-uri", URI + "/bar");
+
+    final Exchange aggregated = createExchange();
+    aggregated.setProperty(Exchange.GROUPED_EXCHANGE, Arrays.asList(matching, notMatching));
+    processor.process(aggregated);
+
+    assertEquals("Foo\r\n", matching.getIn().getBody(String.class));
+    assertEquals("", notMatching.getIn().getBody(String.class));
+  }
+
+  @Test
+  public void testBatchFallsBackForAggregates() {
+    final SparqlQueryProcessor processor = new SparqlQueryProcessor();
+    processor.setQuery("SELECT (COUNT(*) AS ?count) WHERE { ?s ?p ?o }");
+    processor.setResultsFormatName(SparqlQueryProcessor.CSV_WITHOUT_HEADER);
+    processor.setBatch(true);
+
+    final Exchange first = createExchange();
+    final Exchange second = createExchange();
+
+    final Exchange aggregated = createExchange();
+    aggregated.getIn().setBody(Arrays.asList(first, second));
+    processor.process(aggregated);
+
+    assertEquals("2\r\n", first.getIn().getBody(String.class));
+    assertEquals("2\r\n", second.getIn().getBody(String.class));
+  }
+
+  @Test
+  public void testBatchMatchesUnbatchedForBindingInOptionalFilter() {
+    final String query = "PREFIX dcterms: <http://purl.org/dc/terms/>\n" +
+        "SELECT ?s ?title WHERE { ?s dcterms:title ?t OPTIONAL { ?s dcterms:title ?title FILTER(?title = ?wanted) } }";
+    final SparqlQueryProcessor processor = new SparqlQueryProcessor();
+    processor.setQuery(query);
+    processor.setResultsFormatName(SparqlQueryProcessor.CSV_WITHOUT_HEADER);
+
+    final Exchange matching = createExchange();
+    matching.getIn().setHeader("CamelSparqlQueryBinding-Literal-wanted", "Foo");
+    final Exchange notMatching = createExchange();
+    notMatching.getIn().setHeader("CamelSparqlQueryBinding-Literal-wanted", "Bar");
+
+    final Exchange unbatchedMatching = matching.copy();
+    final Exchange unbatchedNotMatching = notMatching.copy();
+    processor.process(unbatchedMatching);
+    processor.process(unbatchedNotMatching);
+
+    processor.setBatch(true);
+    final Exchange aggregated = createExchange();
+    aggregated.getIn().setBody(Arrays.asList(matching, notMatching));
+    processor.process(aggregated);
+
+    assertEquals(URI + ",Foo\r\n", matching.getIn().getBody(String.class));
+    assertEquals(unbatchedMatching.getIn().getBody(String.class), matching.getIn().getBody(String.class));
+    assertEquals(unbatchedNotMatching.getIn().getBody(String.class), notMatching.getIn().getBody(String.class));
+  }
+
+  @Test
+  public void testCanBatch() {
+    final String prefix = "PREFIX dcterms: <http://purl.org/dc/terms/>\n";
+    final Set<String> bound = Collections.singleton("uri");
+    assertTrue(SparqlQueryProcessor.canBatch(
+        QueryFactory.create(prefix + "SELECT ?title WHERE { ?uri dcterms:title ?title }"), bound));
+    assertFalse(SparqlQueryProcessor.canBatch(
+        QueryFactory.create(prefix + "SELECT ?title WHERE { ?s dcterms:title ?title OPTIONAL { ?uri ?p ?title } }"),
+        bound));
+    assertFalse(SparqlQueryProcessor.canBatch(
+        QueryFactory.create(prefix + "SELECT ?title WHERE { ?s dcterms:title ?title FILTER(?s = ?uri) }"), bound));
+    assertTrue(SparqlQueryProcessor.canBatch(
+        QueryFactory.create(prefix + "SELECT ?title WHERE { ?s dcterms:title ?title FILTER(?s = ?other) }"), bound));
+  }
+
+  private String runQuery(final String query, final boolean filterTriples) {
+    final SparqlQueryProcessor processor = new SparqlQueryProcessor();
+    processor.setQuery(query);
+    processor.setResultsFormatName(SparqlQueryProcessor.CSV_WITHOUT_HEADER);
+    processor.setFilterTriples(filterTriples);
+
+    final Exchange exchange = createExchange();
+    processor.process(exchange);
+    return exchange.getIn().getBody(String.class);
+  }
+
+  private Exchange createExchange() {
+    final CamelContext ctx = new DefaultCamelContext();
+    final Exchange exchange = new DefaultExchange(ctx);
+    final Message in = exchange.getIn();
+    in.setHeader("CamelFcrepoUri", URI);
+    in.setBody(RDF_XML);
+    return exchange;
+  }
+}
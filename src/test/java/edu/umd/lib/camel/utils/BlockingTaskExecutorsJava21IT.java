@@ -0,0 +1,88 @@
+package edu.umd.lib.camel.utils;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * Tests the Java 21 version of {@link BlockingTaskExecutors}, from the
+ * multi-release JAR built by the "java21" profile.
+ */
+public class BlockingTaskExecutorsJava21IT {
+  @BeforeClass
+  public static void checkJavaVersion() {
+    assumeTrue("Requires Java 21", isVirtualThreadSupported());
+  }
+
+  @Test
+  public void testUsesVirtualThreads() throws Exception {
+    assertTrue(BlockingTaskExecutors.usesVirtualThreads());
+
+    final ExecutorService executor = BlockingTaskExecutors.newExecutor("test", 2);
+    final AtomicBoolean virtual = new AtomicBoolean();
+    final CountDownLatch done = new CountDownLatch(1);
+    try {
+      executor.execute(() -> {
+        virtual.set(isVirtual(Thread.currentThread()));
+        done.countDown();
+      });
+      assertTrue(done.await(5, TimeUnit.SECONDS));
+      assertTrue(virtual.get());
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  @Test
+  public void testConcurrencyIsBounded() throws InterruptedException {
+    final ExecutorService executor = BlockingTaskExecutors.newExecutor("test", 2);
+    final AtomicInteger running = new AtomicInteger();
+    final AtomicInteger maxRunning = new AtomicInteger();
+    final CountDownLatch done = new CountDownLatch(10);
+    try {
+      for (int i = 0; i < 10; i++) {
+        executor.execute(() -> {
+          maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+          try {
+            Thread.sleep(20);
+          } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+          } finally {
+            running.decrementAndGet();
+            done.countDown();
+          }
+        });
+      }
+      assertTrue(done.await(5, TimeUnit.SECONDS));
+      assertTrue(maxRunning.get() <= 2);
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  // the tests are compiled for Java 8, so Thread.isVirtual() is called reflectively
+  private static boolean isVirtualThreadSupported() {
+    try {
+      Thread.class.getMethod("isVirtual");
+      return true;
+    } catch (NoSuchMethodException e) {
+      return false;
+    }
+  }
+
+  private static boolean isVirtual(final Thread thread) {
+    try {
+      return (Boolean) Thread.class.getMethod("isVirtual").invoke(thread);
+    } catch (ReflectiveOperationException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+}
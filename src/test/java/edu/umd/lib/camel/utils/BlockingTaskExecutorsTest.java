@@ -0,0 +1,39 @@
+package edu.umd.lib.camel.utils;
+
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class BlockingTaskExecutorsTest {
+  @Test
+  public void testConcurrencyIsBounded() throws InterruptedException {
+    final ExecutorService executor = BlockingTaskExecutors.newExecutor("test", 2);
+    final AtomicInteger running = new AtomicInteger();
+    final AtomicInteger maxRunning = new AtomicInteger();
+    final CountDownLatch done = new CountDownLatch(10);
+    try {
+      for (int i = 0; i < 10; i++) {
+        executor.execute(() -> {
+          maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+          try {
+            Thread.sleep(20);
+          } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+          } finally {
+            running.decrementAndGet();
+            done.countDown();
+          }
+        });
+      }
+      assertTrue(done.await(5, TimeUnit.SECONDS));
+      assertTrue(maxRunning.get() <= 2);
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+}
@@ -0,0 +1,45 @@
+package edu.umd.lib.camel.utils;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+public class CrawlCheckpointTest {
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  @Test
+  public void testResume() throws IOException {
+    final File file = new File(folder.getRoot(), "crawl.checkpoint");
+
+    final CrawlCheckpoint checkpoint = new CrawlCheckpoint(file);
+    checkpoint.addAll(Arrays.asList("http://localhost:8080/rest/a", "http://localhost:8080/rest/b"));
+    checkpoint.addAll(Arrays.asList("http://localhost:8080/rest/b", "http://localhost:8080/rest/c"));
+    checkpoint.close();
+
+    final CrawlCheckpoint resumed = new CrawlCheckpoint(file);
+    assertEquals(3, resumed.size());
+    assertTrue(resumed.contains("http://localhost:8080/rest/a"));
+    assertTrue(resumed.contains("http://localhost:8080/rest/c"));
+    assertFalse(resumed.contains("http://localhost:8080/rest/d"));
+  }
+
+  @Test
+  public void testDelete() throws IOException {
+    final File file = new File(folder.getRoot(), "crawl.checkpoint");
+
+    final CrawlCheckpoint checkpoint = new CrawlCheckpoint(file);
+    checkpoint.addAll(Arrays.asList("http://localhost:8080/rest/a"));
+    assertTrue(file.exists());
+
+    checkpoint.delete();
+    assertFalse(file.exists());
+    assertEquals(0, checkpoint.size());
+  }
+}
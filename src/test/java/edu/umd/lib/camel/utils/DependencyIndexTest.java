@@ -0,0 +1,70 @@
+package edu.umd.lib.camel.utils;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.*;
+
+public class DependencyIndexTest {
+  private static final String PLACE = "http://localhost:8080/rest/pcdm/places/college-park";
+
+  private static final String AGENT = "http://localhost:8080/rest/pcdm/agents/umd";
+
+  private static final String FIRST = "http://localhost:8080/rest/pcdm/objects/1";
+
+  private static final String SECOND = "http://localhost:8080/rest/pcdm/objects/2";
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  @Test
+  public void testDependents() {
+    final DependencyIndex index = new DependencyIndex();
+    assertTrue(index.record(FIRST, Arrays.asList(FIRST, PLACE, AGENT)));
+    assertTrue(index.record(SECOND, Collections.singletonList(PLACE)));
+    assertFalse(index.record(SECOND, Collections.singletonList(PLACE)));
+
+    assertEquals(Arrays.asList(FIRST, SECOND), index.getDependents(PLACE));
+    assertEquals(Collections.singletonList(FIRST), index.getDependents(AGENT));
+    assertEquals(Arrays.asList(PLACE, AGENT), index.getDependencies(FIRST));
+    // a resource does not depend on itself
+    assertTrue(index.getDependents(FIRST).isEmpty());
+    assertEquals(2, index.size());
+  }
+
+  @Test
+  public void testRecordReplacesDependencies() {
+    final DependencyIndex index = new DependencyIndex();
+    index.record(FIRST, Arrays.asList(PLACE, AGENT));
+    index.record(FIRST, Collections.singletonList(AGENT));
+
+    assertTrue(index.getDependents(PLACE).isEmpty());
+    assertEquals(Collections.singletonList(FIRST), index.getDependents(AGENT));
+
+    index.remove(FIRST);
+    assertTrue(index.getDependents(AGENT).isEmpty());
+    assertEquals(0, index.size());
+  }
+
+  @Test
+  public void testSaveAndLoad() throws IOException {
+    final File file = new File(folder.getRoot(), "dependencies.idx");
+
+    final DependencyIndex index = new DependencyIndex(file);
+    index.record(FIRST, Arrays.asList(PLACE, AGENT));
+    index.record(SECOND, Collections.singletonList(AGENT));
+    index.remove(FIRST);
+    index.save();
+
+    final DependencyIndex loaded = new DependencyIndex(file);
+    assertEquals(1, loaded.size());
+    assertEquals(Collections.singletonList(SECOND), loaded.getDependents(AGENT));
+    assertTrue(loaded.getDependents(PLACE).isEmpty());
+  }
+}
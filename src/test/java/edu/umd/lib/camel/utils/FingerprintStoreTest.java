@@ -0,0 +1,63 @@
+package edu.umd.lib.camel.utils;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+
+import static org.junit.Assert.*;
+
+public class FingerprintStoreTest {
+  @Rule
+  public TemporaryFolder tempFolder = new TemporaryFolder();
+
+  @Test
+  public void testCommitAndRemove() {
+    final FingerprintStore store = new FingerprintStore();
+    final String a = FingerprintStore.fingerprint("{\"id\":[\"a\"]}");
+    final String b = FingerprintStore.fingerprint("{\"id\":[\"b\"]}");
+    assertNotEquals(a, b);
+
+    store.commit("http://example.com/a", a);
+    assertTrue(store.matches("http://example.com/a", a));
+    assertFalse(store.matches("http://example.com/a", b));
+    store.commit("http://example.com/a", b);
+    assertTrue(store.matches("http://example.com/a", b));
+
+    store.remove("http://example.com/a");
+    assertFalse(store.matches("http://example.com/a", b));
+    assertEquals(0, store.size());
+  }
+
+  @Test
+  public void testMatchAndCommit() {
+    final FingerprintStore store = new FingerprintStore();
+    final String fingerprint = FingerprintStore.fingerprint("{\"id\":[\"a\"]}");
+
+    assertFalse(store.matches("http://example.com/a", fingerprint));
+    // matching does not record anything
+    assertFalse(store.matches("http://example.com/a", fingerprint));
+    store.commit("http://example.com/a", fingerprint);
+    assertTrue(store.matches("http://example.com/a", fingerprint));
+  }
+
+  @Test
+  public void testSaveAndLoad() throws IOException {
+    final File file = new File(tempFolder.getRoot(), "fingerprints.txt");
+    final FingerprintStore store = new FingerprintStore(file);
+    assertEquals(0, store.size());
+
+    final String a = FingerprintStore.fingerprint("{\"id\":[\"a\"]}");
+    final String b = FingerprintStore.fingerprint("{\"id\":[\"b\"]}");
+    store.commit("http://example.com/a", a);
+    store.commit("http://example.com/b c", b);
+    store.save();
+
+    final FingerprintStore reloaded = new FingerprintStore(file);
+    assertEquals(2, reloaded.size());
+    assertTrue(reloaded.matches("http://example.com/a", a));
+    assertTrue(reloaded.matches("http://example.com/b c", b));
+  }
+}
@@ -0,0 +1,34 @@
+package edu.umd.lib.camel.utils;
+
+import org.apache.jena.query.QueryFactory;
+import org.junit.Test;
+
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+public class QueryPredicatesTest {
+  private static final String PREFIXES = "PREFIX dcterms: <http://purl.org/dc/terms/>\n" +
+      "PREFIX pcdm: <http://pcdm.org/models#>\n";
+
+  @Test
+  public void testBasicGraphPattern() {
+    final Set<String> predicates = QueryPredicates.fromQuery(QueryFactory.create(PREFIXES +
+        "SELECT ?title WHERE { ?s a pcdm:Object ; dcterms:title ?title OPTIONAL { ?s pcdm:memberOf/dcterms:title ?c } }"));
+
+    assertNotNull(predicates);
+    assertEquals(3, predicates.size());
+    assertTrue(predicates.contains("http://www.w3.org/1999/02/22-rdf-syntax-ns#type"));
+    assertTrue(predicates.contains("http://purl.org/dc/terms/title"));
+    assertTrue(predicates.contains("http://pcdm.org/models#memberOf"));
+  }
+
+  @Test
+  public void testUnboundedQueries() {
+    assertNull(QueryPredicates.fromQuery(QueryFactory.create("SELECT * WHERE { ?s ?p ?o }")));
+    assertNull(QueryPredicates.fromQuery(QueryFactory.create(PREFIXES +
+        "SELECT * WHERE { ?s dcterms:title ?t FILTER NOT EXISTS { ?s ?p ?o } }")));
+    assertNull(QueryPredicates.fromQuery(QueryFactory.create(PREFIXES +
+        "SELECT * WHERE { ?s !dcterms:title ?o }")));
+  }
+}
@@ -0,0 +1,92 @@
+package edu.umd.lib.ldpath;
+
+import org.apache.marmotta.ldcache.model.CacheEntry;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.openrdf.model.Model;
+import org.openrdf.model.URI;
+import org.openrdf.model.ValueFactory;
+import org.openrdf.model.impl.TreeModel;
+import org.openrdf.model.impl.ValueFactoryImpl;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+
+import static org.junit.Assert.*;
+
+public class CacheSnapshotFileTest {
+  @Rule
+  public TemporaryFolder tempFolder = new TemporaryFolder();
+
+  private final ValueFactory vf = ValueFactoryImpl.getInstance();
+
+  @Test
+  public void testWriteAndRead() throws IOException {
+    final URI label = vf.createURI("http://www.w3.org/2000/01/rdf-schema#label");
+    final URI type = vf.createURI("http://www.w3.org/1999/02/22-rdf-syntax-ns#type");
+
+    final CacheEntry current = entry("http://example.com/a", System.currentTimeMillis() + 60000);
+    current.getTriples().add(vf.createStatement(current.getResource(), label, vf.createLiteral("Maryland", "en")));
+    current.getTriples().add(vf.createStatement(current.getResource(), type,
+        vf.createURI("http://pcdm.org/models#Object")));
+    current.getTriples().add(vf.createStatement(vf.createBNode("b1"), label, vf.createLiteral("12",
+        vf.createURI("http://www.w3.org/2001/XMLSchema#int"))));
+
+    final CacheEntry expired = entry("http://example.com/b", System.currentTimeMillis() - 60000);
+    expired.getTriples().add(vf.createStatement(expired.getResource(), label, vf.createLiteral("Expired")));
+
+    final CacheSnapshotFile snapshotFile = new CacheSnapshotFile(new File(tempFolder.getRoot(), "ldcache.snapshot"));
+    snapshotFile.write(Arrays.asList(current, expired));
+
+    final List<CacheEntry> entries = snapshotFile.read(0);
+    assertEquals(1, entries.size());
+    final CacheEntry loaded = entries.get(0);
+    assertEquals(current.getResource(), loaded.getResource());
+    assertEquals(current.getExpiryDate(), loaded.getExpiryDate());
+    assertEquals(current.getTriples(), loaded.getTriples());
+  }
+
+  @Test
+  public void testContentKey() throws IOException {
+    final CacheEntry current = entry("http://example.com/a", System.currentTimeMillis() + 60000);
+    final Set<String> predicates = new HashSet<>(Arrays.asList(
+        "http://www.w3.org/2000/01/rdf-schema#label", "http://purl.org/dc/terms/title"));
+    final String key = CacheSnapshotFile.contentKey(predicates);
+    assertEquals(key, CacheSnapshotFile.contentKey(new TreeSet<>(predicates)));
+    assertNotEquals(key, CacheSnapshotFile.contentKey(null));
+
+    final CacheSnapshotFile snapshotFile = new CacheSnapshotFile(new File(tempFolder.getRoot(), "ldcache.snapshot"));
+    snapshotFile.write(Collections.singletonList(current), key);
+    assertEquals(1, snapshotFile.read(0, key).size());
+    // entries filtered for another query are not loaded
+    assertTrue(snapshotFile.read(0, CacheSnapshotFile.contentKey(
+        Collections.singleton("http://purl.org/dc/terms/title"))).isEmpty());
+    assertTrue(snapshotFile.read(0).isEmpty());
+  }
+
+  @Test(expected = IOException.class)
+  public void testInvalidFile() throws IOException {
+    final File file = tempFolder.newFile("not-a-snapshot");
+    java.nio.file.Files.write(file.toPath(), "not a snapshot".getBytes("UTF-8"));
+    new CacheSnapshotFile(file).read(0);
+  }
+
+  private CacheEntry entry(final String uri, final long expires) {
+    final CacheEntry entry = new CacheEntry();
+    entry.setResource(vf.createURI(uri));
+    entry.setLastRetrieved(new Date());
+    entry.setExpiryDate(new Date(expires));
+    entry.setUpdateCount(1);
+    final Model triples = new TreeModel();
+    entry.setTriples(triples);
+    return entry;
+  }
+}
@@ -0,0 +1,57 @@
+package edu.umd.lib.ldpath;
+
+import org.junit.After;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class DeadlineTest {
+  @After
+  public void clearDeadline() {
+    Deadline.setCurrent(null);
+  }
+
+  @Test
+  public void testCheck() throws InterruptedException {
+    final Deadline deadline = Deadline.after(50);
+    deadline.check("starting");
+    assertFalse(deadline.isExceeded());
+    assertTrue(deadline.remainingMillis() <= 50);
+
+    Thread.sleep(100);
+    assertTrue(deadline.isExpired());
+    assertEquals(0, deadline.remainingMillis());
+    try {
+      deadline.check("retrieving http://example.com/a");
+      fail("Expected DeadlineExceededException");
+    } catch (DeadlineExceededException e) {
+      assertTrue(e.getMessage().contains("http://example.com/a"));
+    }
+    assertTrue(deadline.isExceeded());
+  }
+
+  @Test
+  public void testCheckCurrent() {
+    // no deadline for this thread
+    Deadline.checkCurrent("retrieving");
+
+    Deadline.setCurrent(Deadline.after(0));
+    try {
+      Deadline.checkCurrent("retrieving");
+      fail("Expected DeadlineExceededException");
+    } catch (DeadlineExceededException e) {
+      assertTrue(Deadline.current().isExceeded());
+    }
+
+    Deadline.setCurrent(null);
+    assertNull(Deadline.current());
+  }
+
+  @Test
+  public void testLimitTimeout() {
+    assertEquals(500, DeadlineRequestInterceptor.limit(0, 500));
+    assertEquals(500, DeadlineRequestInterceptor.limit(-1, 500));
+    assertEquals(200, DeadlineRequestInterceptor.limit(200, 500));
+    assertEquals(500, DeadlineRequestInterceptor.limit(30000, 500));
+  }
+}
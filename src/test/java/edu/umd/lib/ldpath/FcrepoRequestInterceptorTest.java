@@ -0,0 +1,49 @@
+package edu.umd.lib.ldpath;
+
+import org.apache.http.HttpHost;
+import org.apache.http.HttpRequest;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.protocol.HttpClientContext;
+import org.apache.http.protocol.HttpCoreContext;
+import org.junit.Test;
+
+import java.util.Collections;
+
+import static org.junit.Assert.*;
+
+public class FcrepoRequestInterceptorTest {
+  private static final String PREFER_CONTAINMENT = "http://www.w3.org/ns/ldp#PreferContainment";
+
+  @Test
+  public void testBuildPreferHeader() {
+    assertNull(FcrepoRequestInterceptor.buildPreferHeader(null, " "));
+    assertEquals("return=representation; omit=\"" + PREFER_CONTAINMENT + "\"",
+        FcrepoRequestInterceptor.buildPreferHeader(null, PREFER_CONTAINMENT));
+    assertEquals("return=representation; include=\"urn:a urn:b\"; omit=\"urn:c\"",
+        FcrepoRequestInterceptor.buildPreferHeader(" urn:a\n  urn:b ", "urn:c"));
+  }
+
+  @Test
+  public void testOnlyRepositoryRequestsChanged() {
+    final FcrepoRequestInterceptor interceptor = new FcrepoRequestInterceptor(
+        Collections.singleton("repository:8080"), "return=representation", "application/n-triples");
+
+    final HttpRequest repoRequest = new HttpGet("http://repository:8080/rest/foo");
+    repoRequest.setHeader("Accept", "application/rdf+xml");
+    interceptor.process(repoRequest, contextFor(new HttpHost("repository", 8080)));
+    assertEquals("return=representation", repoRequest.getFirstHeader("Prefer").getValue());
+    assertEquals("application/n-triples", repoRequest.getFirstHeader("Accept").getValue());
+
+    final HttpRequest vocabRequest = new HttpGet("http://vocab.lib.umd.edu/form");
+    vocabRequest.setHeader("Accept", "application/rdf+xml");
+    interceptor.process(vocabRequest, contextFor(new HttpHost("vocab.lib.umd.edu")));
+    assertNull(vocabRequest.getFirstHeader("Prefer"));
+    assertEquals("application/rdf+xml", vocabRequest.getFirstHeader("Accept").getValue());
+  }
+
+  private HttpClientContext contextFor(final HttpHost target) {
+    final HttpClientContext context = HttpClientContext.create();
+    context.setAttribute(HttpCoreContext.HTTP_TARGET_HOST, target);
+    return context;
+  }
+}
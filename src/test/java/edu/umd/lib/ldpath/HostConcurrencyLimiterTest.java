@@ -0,0 +1,134 @@
+package edu.umd.lib.ldpath;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class HostConcurrencyLimiterTest {
+  @Test
+  public void testBlocksAtLimit() throws InterruptedException {
+    final HostConcurrencyLimiter limiter = new HostConcurrencyLimiter();
+    limiter.setMaxConcurrency(1);
+
+    final HostConcurrencyLimiter.Permit first = limiter.acquire("repository:8080");
+    // other hosts are not affected
+    limiter.acquire("vocab.lib.umd.edu").close();
+
+    final CountDownLatch acquired = new CountDownLatch(1);
+    final Thread waiter = new Thread(() -> {
+      try (HostConcurrencyLimiter.Permit second = limiter.acquire("repository:8080")) {
+        acquired.countDown();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    });
+    waiter.start();
+
+    assertFalse(acquired.await(200, TimeUnit.MILLISECONDS));
+    assertEquals(1, limiter.getInFlight("repository:8080"));
+
+    first.close();
+    assertTrue(acquired.await(5, TimeUnit.SECONDS));
+    waiter.join();
+    assertEquals(0, limiter.getInFlight("repository:8080"));
+  }
+
+  @Test
+  public void testDeadlineWhileBlocked() throws InterruptedException {
+    final HostConcurrencyLimiter limiter = new HostConcurrencyLimiter();
+    limiter.setMaxConcurrency(1);
+
+    try (HostConcurrencyLimiter.Permit first = limiter.acquire("repository:8080")) {
+      final Deadline deadline = Deadline.after(100);
+      Deadline.setCurrent(deadline);
+      final long start = System.nanoTime();
+      try {
+        limiter.acquire("repository:8080");
+        fail("Expected DeadlineExceededException");
+      } catch (DeadlineExceededException e) {
+        assertTrue(deadline.isExceeded());
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < 5000);
+      } finally {
+        Deadline.setCurrent(null);
+      }
+      assertEquals(1, limiter.getInFlight("repository:8080"));
+    }
+    assertEquals(0, limiter.getInFlight("repository:8080"));
+  }
+
+  @Test
+  public void testAdaptiveLimit() throws InterruptedException {
+    final HostConcurrencyLimiter limiter = new HostConcurrencyLimiter();
+    limiter.setMaxConcurrency(8);
+    limiter.setMinConcurrency(2);
+    limiter.setAdaptive(true);
+
+    final HostConcurrencyLimiter.Permit permit = limiter.acquire("repository:8080");
+    permit.overloaded();
+    permit.close();
+    assertEquals(4, limiter.getLimit("repository:8080"));
+
+    for (int i = 0; i < 3; i++) {
+      final HostConcurrencyLimiter.Permit p = limiter.acquire("repository:8080");
+      p.overloaded();
+      p.close();
+    }
+    assertEquals(2, limiter.getLimit("repository:8080"));
+
+    // additive increase of about one per window of successful requests
+    for (int i = 0; i < 6; i++) {
+      limiter.acquire("repository:8080").close();
+    }
+    assertEquals(4, limiter.getLimit("repository:8080"));
+  }
+
+  @Test
+  public void testBackoffOncePerWindow() throws InterruptedException {
+    final HostConcurrencyLimiter limiter = new HostConcurrencyLimiter();
+    limiter.setMaxConcurrency(8);
+    limiter.setMinConcurrency(1);
+    limiter.setAdaptive(true);
+
+    final List<HostConcurrencyLimiter.Permit> permits = new ArrayList<>();
+    for (int i = 0; i < 4; i++) {
+      permits.add(limiter.acquire("repository:8080"));
+    }
+    // a burst of concurrent failures backs off once
+    for (final HostConcurrencyLimiter.Permit permit : permits) {
+      permit.overloaded();
+      permit.close();
+    }
+    assertEquals(4, limiter.getLimit("repository:8080"));
+
+    // a request started after the backoff can back off again
+    final HostConcurrencyLimiter.Permit permit = limiter.acquire("repository:8080");
+    permit.overloaded();
+    permit.close();
+    assertEquals(2, limiter.getLimit("repository:8080"));
+  }
+
+  @Test
+  public void testLatencyEndsWhenResponded() throws InterruptedException {
+    final HostConcurrencyLimiter limiter = new HostConcurrencyLimiter();
+    limiter.setMaxConcurrency(8);
+    limiter.setLatencyThreshold(100);
+    limiter.setAdaptive(true);
+
+    // time spent after the response is received is not latency
+    try (HostConcurrencyLimiter.Permit permit = limiter.acquire("repository:8080")) {
+      permit.responded();
+      Thread.sleep(200);
+    }
+    assertEquals(8, limiter.getLimit("repository:8080"));
+
+    try (HostConcurrencyLimiter.Permit permit = limiter.acquire("repository:8080")) {
+      Thread.sleep(200);
+    }
+    assertEquals(4, limiter.getLimit("repository:8080"));
+  }
+}
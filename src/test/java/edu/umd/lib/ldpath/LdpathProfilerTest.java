@@ -0,0 +1,92 @@
+package edu.umd.lib.ldpath;
+
+import org.junit.Test;
+import org.openrdf.model.impl.URIImpl;
+
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class LdpathProfilerTest {
+  @Test
+  public void testRecord() {
+    final LdpathProfiler profiler = new LdpathProfiler();
+    profiler.record("title", TimeUnit.MILLISECONDS.toNanos(2), 3, 0);
+    profiler.record("title", TimeUnit.MILLISECONDS.toNanos(4), 5, 1);
+
+    final LdpathProfiler.FieldStatistics title = profiler.getStatistics("title");
+    assertEquals(2, title.getCount());
+    assertEquals(TimeUnit.MILLISECONDS.toNanos(6), title.getTotalNanos());
+    assertEquals(TimeUnit.MILLISECONDS.toNanos(3), title.getMeanNanos());
+    assertEquals(TimeUnit.MILLISECONDS.toNanos(4), title.getMaxNanos());
+    assertEquals(8, title.getNodes());
+    assertEquals(1, title.getFetches());
+    assertNull(profiler.getStatistics("creator"));
+  }
+
+  @Test
+  public void testReportIsSortedByTotalTime() {
+    final LdpathProfiler profiler = new LdpathProfiler();
+    profiler.record("title", TimeUnit.MILLISECONDS.toNanos(1), 1, 0);
+    profiler.record("collection_title", TimeUnit.MILLISECONDS.toNanos(50), 20, 2);
+
+    final String report = profiler.getReport();
+    assertTrue(report.indexOf("collection_title") < report.indexOf("title "));
+
+    profiler.reset();
+    assertNull(profiler.getStatistics("title"));
+    assertEquals(0, profiler.getEvaluationCount());
+  }
+
+  @Test
+  public void testCountersOutsideEvaluationAreIgnored() {
+    // must not fail when no field is being profiled on this thread
+    LdpathProfiler.nodeVisited(new URIImpl("http://example.com/a"));
+    LdpathProfiler.fetchTriggered();
+  }
+
+  @Test
+  public void testDistinctNodesAreCounted() {
+    final LdpathProfiler.Counters counters = LdpathProfiler.startCounting();
+    try {
+      LdpathProfiler.nodeVisited(new URIImpl("http://example.com/a"));
+      LdpathProfiler.nodeVisited(new URIImpl("http://example.com/a"));
+      LdpathProfiler.nodeVisited(new URIImpl("http://example.com/b"));
+      LdpathProfiler.fetchTriggered();
+    } finally {
+      LdpathProfiler.stopCounting();
+    }
+    assertEquals(2, counters.getNodes());
+    assertEquals(1, counters.getFetches());
+  }
+
+  @Test
+  public void testRegisterUnderUniqueName() throws JMException {
+    final LdpathProfiler first = new LdpathProfiler();
+    final LdpathProfiler second = new LdpathProfiler();
+    assertNotEquals(first.getObjectName(), second.getObjectName());
+
+    final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+    first.register();
+    try {
+      second.setObjectName(first.getObjectName());
+      try {
+        second.register();
+        fail("Expected InstanceAlreadyExistsException");
+      } catch (InstanceAlreadyExistsException e) {
+        // expected
+      }
+      // only the profiler that registered the name can unregister it
+      second.unregister();
+      assertTrue(server.isRegistered(new ObjectName(first.getObjectName())));
+    } finally {
+      first.unregister();
+    }
+    assertFalse(server.isRegistered(new ObjectName(first.getObjectName())));
+  }
+}
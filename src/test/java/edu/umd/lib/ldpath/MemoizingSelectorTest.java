@@ -0,0 +1,26 @@
+package edu.umd.lib.ldpath;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+
+public class MemoizingSelectorTest {
+  @Test
+  public void testSplitPath() {
+    assertEquals(Arrays.asList("<http://purl.org/dc/terms/subject>", "<http://www.w3.org/2000/01/rdf-schema#label>"),
+        MemoizingSelector.splitPath(
+            "<http://purl.org/dc/terms/subject> / <http://www.w3.org/2000/01/rdf-schema#label>"));
+    // separators inside groups, tests and string literals do not split the path
+    assertEquals(Arrays.asList("(<http://pcdm.org/models#memberOf> / <http://pcdm.org/models#memberOf>)+",
+        "<http://purl.org/dc/terms/title>[@en]"),
+        MemoizingSelector.splitPath("(<http://pcdm.org/models#memberOf> / <http://pcdm.org/models#memberOf>)+"
+            + " / <http://purl.org/dc/terms/title>[@en]"));
+    assertEquals(Collections.singletonList("fn:concat(\"a / b\", <http://purl.org/dc/terms/title>)"),
+        MemoizingSelector.splitPath("fn:concat(\"a / b\", <http://purl.org/dc/terms/title>)"));
+    assertEquals(Collections.singletonList("<http://purl.org/dc/terms/title>"),
+        MemoizingSelector.splitPath("<http://purl.org/dc/terms/title>"));
+  }
+}
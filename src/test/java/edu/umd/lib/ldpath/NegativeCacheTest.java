@@ -0,0 +1,50 @@
+package edu.umd.lib.ldpath;
+
+import org.apache.marmotta.ldclient.exception.DataRetrievalException;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.SocketTimeoutException;
+
+import static edu.umd.lib.ldpath.NegativeCache.FailureClass.*;
+import static org.junit.Assert.*;
+
+public class NegativeCacheTest {
+  @Test
+  public void testClassify() {
+    final DataRetrievalException plain = new DataRetrievalException("the HTTP request failed");
+    assertEquals(NOT_FOUND, NegativeCache.classify(plain, 404));
+    assertEquals(NOT_FOUND, NegativeCache.classify(plain, 410));
+    assertEquals(CLIENT_ERROR, NegativeCache.classify(plain, 403));
+    assertEquals(SERVER_ERROR, NegativeCache.classify(plain, 503));
+    assertEquals(OTHER, NegativeCache.classify(plain, 200));
+
+    final DataRetrievalException withStatus =
+        new DataRetrievalException("the HTTP request failed (status: HTTP/1.1 404 Not Found)");
+    assertEquals(NOT_FOUND, NegativeCache.classify(withStatus, 0));
+
+    final DataRetrievalException timeout =
+        new DataRetrievalException("I/O error", new SocketTimeoutException("Read timed out"));
+    assertEquals(TIMEOUT, NegativeCache.classify(timeout, 0));
+
+    final DataRetrievalException ioError =
+        new DataRetrievalException("I/O error", new IOException("Connection refused"));
+    assertEquals(CONNECTION_ERROR, NegativeCache.classify(ioError, 0));
+  }
+
+  @Test
+  public void testRecordFailure() {
+    final NegativeCache cache = new NegativeCache();
+    cache.setServerErrorTtl(0);
+
+    cache.recordFailure("http://example.com/missing", NOT_FOUND);
+    cache.recordFailure("http://example.com/flaky", SERVER_ERROR);
+
+    assertEquals(NOT_FOUND, cache.getFailure("http://example.com/missing"));
+    assertTrue(cache.getExpiryTime("http://example.com/missing") > System.currentTimeMillis());
+    assertNull(cache.getFailure("http://example.com/flaky"));
+
+    cache.remove("http://example.com/missing");
+    assertNull(cache.getFailure("http://example.com/missing"));
+  }
+}
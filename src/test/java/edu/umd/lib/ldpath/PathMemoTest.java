@@ -0,0 +1,122 @@
+package edu.umd.lib.ldpath;
+
+import org.apache.marmotta.ldcache.model.CacheEntry;
+import org.junit.Test;
+import org.openrdf.model.URI;
+import org.openrdf.model.Value;
+import org.openrdf.model.impl.LinkedHashModel;
+import org.openrdf.model.impl.LiteralImpl;
+import org.openrdf.model.impl.StatementImpl;
+import org.openrdf.model.impl.URIImpl;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class PathMemoTest {
+  private static final URI RDFS_LABEL = new URIImpl("http://www.w3.org/2000/01/rdf-schema#label");
+
+  private static final URI TYPE_TERM = new URIImpl("http://vocab.lib.umd.edu/form#photographs");
+
+  private static final String SCHEME = "http://vocab.lib.umd.edu/form";
+
+  private static final String LABEL_PATH = "<http://www.w3.org/2000/01/rdf-schema#label>";
+
+  private static final List<Value> LABELS = Collections.singletonList(new LiteralImpl("Photographs"));
+
+  @Test
+  public void testMemoizeAndInvalidate() {
+    final PathMemo memo = new PathMemo(100, 60);
+    assertNull(memo.get(TYPE_TERM, LABEL_PATH));
+
+    evaluate(memo, TYPE_TERM, LABEL_PATH, LABELS, entry(60000, true), TYPE_TERM.stringValue(), SCHEME);
+    final Collection<Value> labels = memo.get(TYPE_TERM, LABEL_PATH);
+    assertEquals(LABELS, labels);
+    assertEquals(1, memo.getHits());
+    assertEquals(1, memo.getMisses());
+
+    // replacing any entry the values were read from discards them
+    memo.invalidate(SCHEME);
+    assertNull(memo.get(TYPE_TERM, LABEL_PATH));
+    assertEquals(0, memo.size());
+  }
+
+  @Test
+  public void testEmptyEntryIsNotMemoized() {
+    final PathMemo memo = new PathMemo(100, 60);
+    evaluate(memo, TYPE_TERM, LABEL_PATH, Collections.emptyList(), entry(60000, false), TYPE_TERM.stringValue());
+    assertNull(memo.get(TYPE_TERM, LABEL_PATH));
+  }
+
+  @Test
+  public void testExpiresWithCacheEntry() {
+    final PathMemo memo = new PathMemo(100, 60);
+    evaluate(memo, TYPE_TERM, LABEL_PATH, LABELS, entry(-1000, true), TYPE_TERM.stringValue());
+    assertNull(memo.get(TYPE_TERM, LABEL_PATH));
+  }
+
+  @Test
+  public void testExpiresWithTtl() {
+    final PathMemo memo = new PathMemo(100, 0);
+    evaluate(memo, TYPE_TERM, LABEL_PATH, LABELS, entry(60000, true), TYPE_TERM.stringValue());
+    assertNull(memo.get(TYPE_TERM, LABEL_PATH));
+  }
+
+  @Test
+  public void testNestedSubPathReadsCountForEnclosingPath() {
+    final PathMemo memo = new PathMemo(100, 60);
+    final URI object = new URIImpl("http://localhost:8080/rest/pcdm/objects/1");
+    final String typeLabelPath = "<http://www.europeana.eu/schemas/edm/hasType> / " + LABEL_PATH;
+
+    final PathMemo.Frame outer = memo.start();
+    evaluate(memo, TYPE_TERM, LABEL_PATH, LABELS, entry(60000, true), TYPE_TERM.stringValue());
+    memo.end(outer, object, typeLabelPath, LABELS);
+    assertNotNull(memo.get(object, typeLabelPath));
+
+    memo.invalidate(TYPE_TERM.stringValue());
+    assertNull(memo.get(object, typeLabelPath));
+  }
+
+  @Test
+  public void testReverseStepIsNotMemoized() {
+    final PathMemo memo = new PathMemo(100, 60);
+    final PathMemo.Frame frame = memo.start();
+    PathMemo.untrackedRead();
+    memo.end(frame, TYPE_TERM, LABEL_PATH, LABELS);
+    assertNull(memo.get(TYPE_TERM, LABEL_PATH));
+  }
+
+  @Test
+  public void testSizeIsBounded() {
+    final PathMemo memo = new PathMemo(32, 60);
+    for (int i = 0; i < 1000; i++) {
+      final URI node = new URIImpl("http://example.com/" + i);
+      evaluate(memo, node, LABEL_PATH, LABELS, entry(60000, true), node.stringValue());
+    }
+    assertTrue(memo.size() <= 32);
+  }
+
+  private static void evaluate(final PathMemo memo, final Value node, final String expression,
+                               final List<Value> values, final CacheEntry entry, final String... reads) {
+    final PathMemo.Frame frame = memo.start();
+    for (final String resource : reads) {
+      memo.beforeRead(resource);
+      PathMemo.afterRead(entry);
+    }
+    memo.end(frame, node, expression, values);
+  }
+
+  private static CacheEntry entry(final long expiresIn, final boolean hasTriples) {
+    final CacheEntry entry = new CacheEntry();
+    entry.setExpiryDate(new Date(System.currentTimeMillis() + expiresIn));
+    final LinkedHashModel triples = new LinkedHashModel();
+    if (hasTriples) {
+      triples.add(new StatementImpl(TYPE_TERM, RDFS_LABEL, new LiteralImpl("Photographs")));
+    }
+    entry.setTriples(triples);
+    return entry;
+  }
+}
@@ -0,0 +1,54 @@
+package edu.umd.lib.ldpath;
+
+import edu.umd.lib.camel.processors.TestUtils;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+public class ProgramPredicatesTest {
+  @Test
+  public void testComplexProgram() throws IOException {
+    final Set<String> predicates =
+        ProgramPredicates.fromProgram(TestUtils.getResourceAsString("complexProgram.ldpath"));
+
+    assertNotNull(predicates);
+    assertTrue(predicates.contains("http://purl.org/dc/terms/title"));
+    assertTrue(predicates.contains("http://www.w3.org/2000/01/rdf-schema#label"));
+    // default namespace
+    assertTrue(predicates.contains("http://www.w3.org/2002/07/owl#sameAs"));
+    // recursive path
+    assertTrue(predicates.contains("http://pcdm.org/models#fileOf"));
+    assertFalse(predicates.contains("http://www.w3.org/ns/ldp#contains"));
+    // field types and functions are not predicates
+    assertFalse(predicates.contains("http://www.w3.org/2001/XMLSchema#string"));
+  }
+
+  @Test
+  public void testUnboundedPrograms() {
+    assertNull(ProgramPredicates.fromProgram("all = * :: xsd:string ;"));
+    assertNull(ProgramPredicates.fromProgram("title = foo:title :: xsd:string ;"));
+  }
+
+  @Test
+  public void testFullUris() {
+    final Set<String> predicates = ProgramPredicates.fromProgram(
+        "label = <http://www.w3.org/2004/02/skos/core#prefLabel> :: xsd:string ;\n" +
+        "members = (<http://pcdm.org/models#hasMember>)* :: xsd:string ;");
+
+    assertNotNull(predicates);
+    assertTrue(predicates.contains("http://www.w3.org/2004/02/skos/core#prefLabel"));
+    assertTrue(predicates.contains("http://pcdm.org/models#hasMember"));
+    assertTrue(predicates.contains("http://www.w3.org/1999/02/22-rdf-syntax-ns#type"));
+  }
+
+  @Test
+  public void testHasWildcard() {
+    assertTrue(ProgramPredicates.hasWildcard("*"));
+    assertTrue(ProgramPredicates.hasWildcard("<http://pcdm.org/models#hasMember> / *"));
+    assertFalse(ProgramPredicates.hasWildcard("(<http://pcdm.org/models#hasMember>)*"));
+    assertFalse(ProgramPredicates.hasWildcard("<http://purl.org/dc/terms/title>[. is \"*\"]"));
+  }
+}
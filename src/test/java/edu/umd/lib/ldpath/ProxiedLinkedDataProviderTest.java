@@ -0,0 +1,34 @@
+package edu.umd.lib.ldpath;
+
+import org.junit.After;
+import org.junit.Test;
+
+import static edu.umd.lib.ldpath.NegativeCache.FailureClass.NOT_FOUND;
+import static edu.umd.lib.ldpath.NegativeCache.FailureClass.SERVER_ERROR;
+import static edu.umd.lib.ldpath.NegativeCache.FailureClass.TIMEOUT;
+import static org.junit.Assert.*;
+
+public class ProxiedLinkedDataProviderTest {
+  @After
+  public void clearDeadline() {
+    Deadline.setCurrent(null);
+  }
+
+  @Test
+  public void testIsOverloaded() {
+    assertTrue(ProxiedLinkedDataProvider.isOverloaded(SERVER_ERROR));
+    assertTrue(ProxiedLinkedDataProvider.isOverloaded(TIMEOUT));
+    assertFalse(ProxiedLinkedDataProvider.isOverloaded(NOT_FOUND));
+
+    Deadline.setCurrent(Deadline.after(60000));
+    assertTrue(ProxiedLinkedDataProvider.isOverloaded(TIMEOUT));
+  }
+
+  @Test
+  public void testTimeoutAfterDeadlineIsNotOverload() {
+    // the deadline shortened the timeout, so the host may be healthy
+    Deadline.setCurrent(Deadline.after(0));
+    assertFalse(ProxiedLinkedDataProvider.isOverloaded(TIMEOUT));
+    assertTrue(ProxiedLinkedDataProvider.isOverloaded(SERVER_ERROR));
+  }
+}
@@ -0,0 +1,63 @@
+package edu.umd.lib.ldpath;
+
+import org.apache.marmotta.ldcache.api.LDCachingBackend;
+import org.apache.marmotta.ldcache.model.CacheEntry;
+import org.junit.Test;
+import org.openrdf.model.URI;
+
+import static org.junit.Assert.*;
+
+public class SharedCachingBackendsTest {
+  @Test
+  public void testReferenceCounting() {
+    final CountingBackend backend = new CountingBackend();
+
+    final LDCachingBackend first = SharedCachingBackends.acquire("test", () -> backend);
+    final LDCachingBackend second = SharedCachingBackends.acquire("test", CountingBackend::new);
+    assertEquals(2, SharedCachingBackends.getReferenceCount("test"));
+    assertEquals(1, backend.initialized);
+
+    first.initialize();
+    assertEquals(1, backend.initialized);
+
+    first.shutdown();
+    // shutting down the same handle twice only releases one reference
+    first.shutdown();
+    assertEquals(1, SharedCachingBackends.getReferenceCount("test"));
+    assertEquals(0, backend.shutdown);
+
+    second.shutdown();
+    assertEquals(0, SharedCachingBackends.getReferenceCount("test"));
+    assertEquals(1, backend.shutdown);
+  }
+
+  private static class CountingBackend implements LDCachingBackend {
+    int initialized = 0;
+
+    int shutdown = 0;
+
+    @Override
+    public CacheEntry getEntry(URI resource) {
+      return null;
+    }
+
+    @Override
+    public void putEntry(URI resource, CacheEntry entry) {}
+
+    @Override
+    public void removeEntry(URI resource) {}
+
+    @Override
+    public void clear() {}
+
+    @Override
+    public void initialize() {
+      initialized++;
+    }
+
+    @Override
+    public void shutdown() {
+      shutdown++;
+    }
+  }
+}
@@ -0,0 +1,74 @@
+package edu.umd.lib.ldpath;
+
+import org.junit.Test;
+import org.openrdf.model.Literal;
+import org.openrdf.model.Statement;
+import org.openrdf.model.URI;
+import org.openrdf.model.impl.LiteralImpl;
+import org.openrdf.model.impl.StatementImpl;
+import org.openrdf.model.impl.URIImpl;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.*;
+
+public class ValueInternerTest {
+  private static final String RDFS_LABEL = "http://www.w3.org/2000/01/rdf-schema#label";
+
+  @Test
+  public void testIntern() {
+    final ValueInterner interner = new ValueInterner(100);
+
+    final URI first = interner.intern(new URIImpl(RDFS_LABEL));
+    final URI second = interner.intern(new URIImpl(RDFS_LABEL));
+    assertSame(first, second);
+
+    final Literal en = interner.intern(new LiteralImpl("Maryland", "en"));
+    final Literal ja = interner.intern(new LiteralImpl("Maryland", "ja"));
+    assertNotSame(en, ja);
+    assertSame(en, interner.intern(new LiteralImpl("Maryland", "en")));
+  }
+
+  @Test
+  public void testInternStatement() {
+    final ValueInterner interner = new ValueInterner(100);
+    final URI label = interner.intern(new URIImpl(RDFS_LABEL));
+
+    final Statement statement = interner.intern(new StatementImpl(new URIImpl("http://example.com/a"),
+        new URIImpl(RDFS_LABEL), new LiteralImpl("A")));
+    assertSame(label, statement.getPredicate());
+  }
+
+  @Test
+  public void testMaxSize() {
+    final ValueInterner interner = new ValueInterner(2);
+    interner.intern(new URIImpl("http://example.com/a"));
+    interner.intern(new URIImpl("http://example.com/b"));
+    interner.intern(new URIImpl("http://example.com/c"));
+    assertTrue(interner.size() <= 2);
+  }
+
+  @Test
+  public void testConcurrentIntern() throws Exception {
+    final ValueInterner interner = new ValueInterner(1000);
+    final ExecutorService executor = Executors.newFixedThreadPool(4);
+    try {
+      final List<Future<URI>> results = new ArrayList<>();
+      for (int i = 0; i < 100; i++) {
+        results.add(executor.submit(() -> interner.intern(new URIImpl(RDFS_LABEL))));
+      }
+      final URI canonical = results.get(0).get();
+      for (final Future<URI> result : results) {
+        assertSame(canonical, result.get());
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+    assertEquals(1, interner.getMisses());
+    assertEquals(99, interner.getHits());
+  }
+}